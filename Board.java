@@ -1,402 +1,420 @@
 import java.awt.event.*;
-import java.util.Random;
 import java.awt.*;
 import javax.swing.*;
 
 /**
- *  This class deals with the logic of the Minesweeper board.
- *  The logic includes things like placing mines, linking neighbors,
- *  and determining # of mines adjacent to each tile. It also deals
- *  with things like revealing a single or multiple tiles when clicked
- *  on a tile and keeping track of tiles opened or marked. There is a
- *  Listener sub-class nested inside that listens to when Minesweeper tiles
- *  are being interacted with. This class is immutable and has jurisdiction
- *  only inside the Game class.
+ *  This class deals with showing a Minesweeper board in Swing. The state
+ *  of the board, like where the mines are, the # of mines adjacent to each
+ *  tile and which tiles are opened or marked, lives in a BoardModel. The
+ *  whole grid is painted by this single component straight from the model,
+ *  each tile copied from a picture in a shared TileAtlas, and a mouse
+ *  position is mapped to its tile with a division. Only the parts of the
+ *  grid that changed are repainted: every change made by a click, however
+ *  many tiles it opens, is reported by the model at once and joined with
+ *  the others into one dirty rectangle, which is repainted at most once
+ *  per frame of the screen. There is a Listener sub-class nested inside
+ *  that listens to when Minesweeper tiles are being interacted with and
+ *  passes the clicks on to the model. A Board keeps no static state, it
+ *  tells only the GameEvents it was given about the game, so any number
+ *  of Boards can be played at once.
  */
 
 public final class Board extends JPanel {
 
-    private final Tile[][] board;                   // Used to represent the board of Tiles
-    private final int xSize;                        // # of Columns
-    private final int ySize;                        // # of Rows
-    private final int nMines;                       // # of Mines
-    private int tilesOpened;                        // Used to keep track of Tiles opened
+    private static final int TILE_SIZE = 20;        // Preferred size of a Tile
+    private static final int GAP = 3;               // Space between Tiles
+    private static final int MIN_GAP_TILE = 8;      // Smaller Tiles are drawn without a gap
+    private static final int DEFAULT_REFRESH_RATE = 60;     // Frames per second if the screen does not say
 
-    // Game Icons
-    ImageIcon mine = new ImageIcon("mine.png");
-    ImageIcon flag = new ImageIcon("flag.png");
-    ImageIcon question = new ImageIcon("q.png");
+    // Time spent handling clicks and painting, in nanoseconds
+    private static final Metrics.Histogram CLICK_NANOS = Metrics.histogram("click.nanos");
+    private static final Metrics.Histogram CLICK_QUEUE_NANOS = Metrics.histogram("click.queue.nanos");
+    private static final Metrics.Histogram CLICK_TO_PAINT_NANOS = Metrics.histogram("click.to.paint.nanos");
+    private static final Metrics.Histogram PAINT_NANOS = Metrics.histogram("paint.nanos");
+    private static final Metrics.Histogram PAINT_TILES = Metrics.histogram("paint.tiles");
+
+    private final BoardModel model;                 // State of the board
+    private final ReplayRecorder recorder;          // Records every click for a replay
+    private final GameClock clock;                  // Times the game from the first cell opened
+    private final GameEvents events;                // Told what happens, by the game that owns this Board
+    private final int[] shades;                     // Gradient shade of hidden Tiles by row+column
+    private final Rectangle clip;                   // Area being repainted, reused by every paint
+    private final Rectangle dirty;                  // Area to repaint at the next frame, empty if none
+    private final Timer frame;                      // Repaints the dirty area once the frame is due
+    private TileAtlas atlas;                        // Pictures of the Tiles at their current size
+    private GraphicsConfiguration frameScreen;      // Screen frameNanos was read from
+    private long frameNanos;                        // Time between frames of the screen
+    private long lastFrame;                         // System.nanoTime of the last repaint asked for
+    private int hoverCell;                          // Tile under the mouse, -1 if none
+    private boolean gameOver;                       // Used to show wrongly guessed Mines
+    private long clickedAt;                         // System.nanoTime of a click not painted yet, 0 if none
 
     // CONSTRUCTOR
-    public Board(int x, int y, int mines) {
-        board = new Tile[x][y];
-        xSize = x;
-        ySize = y;
-        nMines = mines;
-        tilesOpened = 0;
+    public Board(int x, int y, int mines, GameEvents events) {
+        this(new BoardModel(x, y, mines), events);
+    }
+
+    // CONSTRUCTOR
+    public Board(BoardModel model, GameEvents events) {
+        this.model = model;
+        this.events = events;
+        recorder = new ReplayRecorder(model);
+        clock = new GameClock();
+        int x = model.getRows();
+        int y = model.getCols();
+        shades = new int[x + y];
+        clip = new Rectangle();
+        dirty = new Rectangle();
+        frame = new Timer(0, event -> repaintDirty());
+        frame.setRepeats(false);
+        hoverCell = -1;
+        gameOver = false;
         prepareBoard(x, y);
-        printBoard();
     }
 
-    // Initializes, prepares and fills the board with Tiles
+    // Prepares the colors, size and listeners of the board
     private void prepareBoard(int height, int width) {
         Listener clickHandler = new Listener();                     // Used to listen to Tile clicks
-        setLayout(new GridLayout(height,width,3,3));
+        addMouseListener(clickHandler);
+        addMouseMotionListener(clickHandler);
         setBackground(Color.darkGray);
+        setOpaque(true);
+        setFont(UIManager.getFont("Button.font"));
+        setPreferredSize(new Dimension(width*(TILE_SIZE+GAP), height*(TILE_SIZE+GAP)));
         int colorChange = 100 / (height + width);                   // Used for gradient effect
-        for(int i = 0; i < height; i++) {
-            for(int j = 0; j < width; j++) {
-                int changeAmount = j+i;                             // Used for gradient effect
-                changeAmount *= colorChange;                        // Increases with board dimensions
-                Color paint = new Color(0,100-changeAmount,255);
-                board[i][j] = new Tile(0);
-                add(board[i][j]);
-                board[i][j].setPreferredSize(new Dimension(20, 20));
-                board[i][j].addMouseListener(clickHandler);
-                board[i][j].setBackground(paint);
-                board[i][j].saveColor(100-changeAmount);            // Save color for hover effect
-            }
-        }
-        placeMines();
-        linkNeighbors();
-        setBoardNumbers();
+        for(int i = 0; i < shades.length; i++)
+            shades[i] = Math.min(i*colorChange, TileAtlas.SHADES-1);  // Increases with board dimensions
     }
 
-    // Randomly places mines throughout the board represented by an integer 9
-    private void placeMines() {
-        Random generator = new Random();
-        for(int i = 0; i < nMines; i++) {
-            int x = generator.nextInt(xSize);
-            int y = generator.nextInt(ySize);
-            if(!board[x][y].isMine()) {
-                board[x][y].setSymbol(9);
-                board[x][y].setMineStatus(true);
-            }
-            else                                        // If picked tile is a mine then redo
-                i--;
-        }
+    // Returns the model behind this Board
+    protected BoardModel getModel() {
+        return model;
     }
 
-    // Initializes Tile neighbor pointers
-    private void linkNeighbors() {
-        for(int i = 0; i < xSize; i++) {
-            for(int j = 0; j < ySize; j++) {
-                if(i > 0 && i < xSize-1 && j > 0 && j < ySize-1) {
-                    board[i][j].upLeft = board[i-1][j-1];
-                    board[i][j].up = board[i][j-1];
-                    board[i][j].upRight = board[i+1][j-1];
-                    board[i][j].right = board[i+1][j];
-                    board[i][j].downRight = board[i+1][j+1];
-                    board[i][j].down = board[i][j+1];
-                    board[i][j].downLeft = board[i-1][j+1];
-                    board[i][j].left = board[i-1][j];
-                }
-                else if(i > 0 && i < xSize-1 && j == 0) {
-                    board[i][j].upLeft = null;
-                    board[i][j].up = null;
-                    board[i][j].upRight = null;
-                    board[i][j].right = board[i+1][j];
-                    board[i][j].downRight = board[i+1][j+1];
-                    board[i][j].down = board[i][j+1];
-                    board[i][j].downLeft = board[i-1][j+1];
-                    board[i][j].left = board[i-1][j];
-                }
-                else if(i == 0 && j > 0 && j < ySize-1) {
-                    board[i][j].up = board[i][j-1];
-                    board[i][j].upRight = board[i+1][j-1];
-                    board[i][j].right = board[i+1][j];
-                    board[i][j].downRight = board[i+1][j+1];
-                    board[i][j].down = board[i][j+1];
-                    board[i][j].downLeft = null;
-                    board[i][j].left = null;
-                    board[i][j].upLeft = null;
-                }
-                else if(i > 0 && i < xSize-1 && j == ySize-1) {
-                    board[i][j].left = board[i-1][j];
-                    board[i][j].upLeft = board[i-1][j-1];
-                    board[i][j].up = board[i][j-1];
-                    board[i][j].upRight = board[i+1][j-1];
-                    board[i][j].right = board[i+1][j];
-                    board[i][j].downRight = null;
-                    board[i][j].down = null;
-                    board[i][j].downLeft = null;
-                }
-                else if(i == xSize-1 && j > 0 && j < ySize-1) {
-                    board[i][j].down = board[i][j+1];
-                    board[i][j].downLeft = board[i-1][j+1];
-                    board[i][j].left = board[i-1][j];
-                    board[i][j].upLeft = board[i-1][j-1];
-                    board[i][j].up = board[i][j-1];
-                    board[i][j].upRight = null;
-                    board[i][j].right = null;
-                    board[i][j].downRight = null;
-                }
-                else if(i == 0 && j == 0) {
-                    board[i][j].upLeft = null;
-                    board[i][j].up = null;
-                    board[i][j].upRight = null;
-                    board[i][j].right = board[i+1][j];
-                    board[i][j].downRight = board[i+1][j+1];
-                    board[i][j].down = board[i][j+1];
-                    board[i][j].downLeft = null;
-                    board[i][j].left = null;
-                }
-                else if(i == 0 && j == ySize-1) {
-                    board[i][j].up = board[i][j-1];
-                    board[i][j].upRight = board[i+1][j-1];
-                    board[i][j].right = board[i+1][j];
-                    board[i][j].downRight = null;
-                    board[i][j].down = null;
-                    board[i][j].downLeft = null;
-                    board[i][j].left = null;
-                }
-                else if(i == xSize-1 && j == ySize-1) {
-                    board[i][j].left = board[i-1][j];
-                    board[i][j].upLeft = board[i-1][j-1];
-                    board[i][j].up = board[i][j-1];
-                    board[i][j].upRight = null;
-                    board[i][j].right = null;
-                    board[i][j].downRight = null;
-                    board[i][j].down = null;
-                    board[i][j].downLeft = null;
-                }
-                else {
-                    board[i][j].down = board[i][j+1];
-                    board[i][j].downLeft = board[i-1][j+1];
-                    board[i][j].left = board[i-1][j];
-                    board[i][j].upLeft = null;
-                    board[i][j].up = null;
-                    board[i][j].upRight = null;
-                    board[i][j].right = null;
-                    board[i][j].downRight = null;
-                }
-            }
-        }
+    // Returns the clock of the game
+    protected GameClock getClock() {
+        return clock;
     }
 
-    // Using Tile's knowledge of it's neighbors sets the # of adjacent Mines
-    private void setBoardNumbers() {
-        int adjMines = 0;
-        for(int i = 0; i < xSize; i++) {
-            for(int j = 0; j < ySize; j++) {
-                if(board[i][j].up != null && board[i][j].up.isMine() ) { adjMines++; }
-                if(board[i][j].upRight != null && board[i][j].upRight.isMine() ) { adjMines++; }
-                if(board[i][j].right != null && board[i][j].right.isMine() ) { adjMines++; }
-                if(board[i][j].downRight != null && board[i][j].downRight.isMine() ) { adjMines++; }
-                if(board[i][j].down != null && board[i][j].down.isMine() ) { adjMines++; }
-                if(board[i][j].downLeft != null && board[i][j].downLeft.isMine() ) { adjMines++; }
-                if(board[i][j].left != null && board[i][j].left.isMine() ) { adjMines++; }
-                if(board[i][j].upLeft != null && board[i][j].upLeft.isMine() ) { adjMines++; }
-                if(!board[i][j].isMine() ) {
-                    board[i][j].setSymbol(adjMines);
-                }
-                adjMines = 0;
-            }
-        }
+    // Returns the recording of the game so far
+    protected byte[] getReplay() {
+        return recorder.toByteArray();
     }
 
     // Returns the # of Tiles opened
     protected int getTilesOpened() {
-        return tilesOpened;
+        return model.getTilesOpened();
     }
 
     // Returns the # of Mines on a board
     protected int getMineCount() {
-        return nMines;
+        return model.getMineCount();
     }
 
     // Returns the area of the Board (rows*columns)
     protected int getBoardSize() {
-        return xSize*ySize;
+        return model.getBoardSize();
     }
 
-    // Debugger function to print the Board in console
-    private void printBoard() {
-        for(int i = 0; i < xSize; i++) {
-            for(int j = 0; j < ySize; j++) {
-                System.out.print(board[i][j].getSymbol() + " ");
-                if(j != 0 && j % 9 == 0) { System.out.println(); }
-            }
+    // Returns the width of a Tile including the gap
+    private int tileWidth() {
+        return Math.max(1, getWidth() / model.getCols());
+    }
+
+    // Returns the height of a Tile including the gap
+    private int tileHeight() {
+        return Math.max(1, getHeight() / model.getRows());
+    }
+
+    // Returns the cell under a point of the board, -1 if there is none
+    private int cellAt(int x, int y) {
+        int col = x / tileWidth();
+        int row = y / tileHeight();
+        if(x < 0 || y < 0 || row >= model.getRows() || col >= model.getCols())
+            return -1;
+        return model.index(row, col);
+    }
+
+    // Repaints the area of a single Tile
+    private void repaintCell(int cell) {
+        if(cell < 0)
+            return;
+        repaintArea(model.colOf(cell)*tileWidth(), model.rowOf(cell)*tileHeight(), tileWidth(), tileHeight());
+    }
+
+    // Repaints the smallest area holding the first count cells the model
+    // reported as opened
+    private void repaintOpened(int count) {
+        if(count == 0)
+            return;
+        int[] opened = model.getOpened();
+        int minRow = Integer.MAX_VALUE, maxRow = -1;
+        int minCol = Integer.MAX_VALUE, maxCol = -1;
+        for(int i = 0; i < count; i++) {
+            int row = model.rowOf(opened[i]);
+            int col = model.colOf(opened[i]);
+            minRow = Math.min(minRow, row);
+            maxRow = Math.max(maxRow, row);
+            minCol = Math.min(minCol, col);
+            maxCol = Math.max(maxCol, col);
         }
-        System.out.println();
+        repaintArea(minCol*tileWidth(), minRow*tileHeight(),
+                (maxCol-minCol+1)*tileWidth(), (maxRow-minRow+1)*tileHeight());
     }
 
-    // Using Tile's knowledge of it's neighbors it recursively opens all
-    // Tiles that have no adjacent Mines
-    private void openAdjZeros(Tile tile) {
-        reveal(tile);
-        if(tile.up != null && tile.up.isHidden() && !tile.up.isMine() && tile.up.getRightClickStatus() != 1) {
-            if(tile.up.getSymbol() == 0) {
-                openAdjZeros(tile.up);
-            }
-            else {
-                reveal(tile.up);
-            }
+    // Adds an area to the dirty rectangle. If a frame has passed since the last
+    // repaint it is repainted right away, so a lone click shows at once, else
+    // it waits for the frame to be due with everything else that changes
+    private void repaintArea(int x, int y, int w, int h) {
+        if(dirty.isEmpty()) {
+            dirty.setBounds(x, y, w, h);
         }
-        if(tile.upRight != null && tile.upRight.isHidden() && !tile.upRight.isMine() && tile.upRight.getRightClickStatus() != 1) {
-            if(tile.upRight.getSymbol() == 0) {
-                openAdjZeros(tile.upRight);
-            }
-            else {
-                reveal(tile.upRight);
-            }
+        else {
+            int right = Math.max(dirty.x + dirty.width, x + w);
+            int bottom = Math.max(dirty.y + dirty.height, y + h);
+            dirty.x = Math.min(dirty.x, x);
+            dirty.y = Math.min(dirty.y, y);
+            dirty.width = right - dirty.x;
+            dirty.height = bottom - dirty.y;
         }
-        if(tile.right != null && tile.right.isHidden() && !tile.right.isMine() && tile.right.getRightClickStatus() != 1) {
-            if(tile.right.getSymbol() == 0) {
-                openAdjZeros(tile.right);
-            }
-            else {
-                reveal(tile.right);
-            }
+        if(frame.isRunning())
+            return;
+        long wait = frameNanos() - (System.nanoTime() - lastFrame);
+        if(wait <= 0) {
+            repaintDirty();
         }
-        if(tile.downRight != null && tile.downRight.isHidden() && !tile.downRight.isMine() && tile.downRight.getRightClickStatus() != 1) {
-            if(tile.downRight.getSymbol() == 0) {
-                openAdjZeros(tile.downRight);
-            }
-            else {
-                reveal(tile.downRight);
-            }
+        else {
+            frame.setInitialDelay((int)((wait + 999999) / 1000000));
+            frame.restart();
         }
-        if(tile.down != null && tile.down.isHidden() && !tile.down.isMine() && tile.down.getRightClickStatus() != 1) {
-            if(tile.down.getSymbol() == 0) {
-                openAdjZeros(tile.down);
-            }
-            else {
-                reveal(tile.down);
+    }
+
+    // Asks Swing to repaint the dirty rectangle and empties it
+    private void repaintDirty() {
+        lastFrame = System.nanoTime();
+        if(dirty.isEmpty())
+            return;
+        repaint(dirty.x, dirty.y, dirty.width, dirty.height);
+        dirty.setBounds(0, 0, 0, 0);
+    }
+
+    // Returns the time between frames of the screen the board is on, read
+    // again only when the board moves to another screen
+    private long frameNanos() {
+        GraphicsConfiguration screen = getGraphicsConfiguration();
+        if(frameNanos == 0 || screen != frameScreen) {
+            int rate = DEFAULT_REFRESH_RATE;
+            if(screen != null) {
+                int screenRate = screen.getDevice().getDisplayMode().getRefreshRate();
+                if(screenRate != DisplayMode.REFRESH_RATE_UNKNOWN)
+                    rate = screenRate;
             }
+            frameScreen = screen;
+            frameNanos = 1000000000L / rate;
         }
-        if(tile.downLeft != null && tile.downLeft.isHidden() && !tile.downLeft.isMine() && tile.downLeft.getRightClickStatus() != 1) {
-            if(tile.downLeft.getSymbol() == 0) {
-                openAdjZeros(tile.downLeft);
-            }
-            else {
-                reveal(tile.downLeft);
-            }
+        return frameNanos;
+    }
+
+    // Paints every Tile that intersects the area being repainted
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        Metrics.PaintEvent event = new Metrics.PaintEvent();
+        event.begin();
+        super.paintComponent(g);
+        int w = tileWidth();
+        int h = tileHeight();
+        int gap = Math.min(w, h) < MIN_GAP_TILE ? 0 : GAP;
+        TileAtlas tiles = atlas(w-gap, h-gap);
+        clip.setBounds(0, 0, getWidth(), getHeight());
+        g.getClipBounds(clip);                      // Left as the whole board if there is no clip
+        int firstRow = Math.max(0, clip.y / h);
+        int lastRow = Math.min(model.getRows()-1, (clip.y + clip.height - 1) / h);
+        int firstCol = Math.max(0, clip.x / w);
+        int lastCol = Math.min(model.getCols()-1, (clip.x + clip.width - 1) / w);
+        for(int row = firstRow; row <= lastRow; row++) {
+            for(int col = firstCol; col <= lastCol; col++)
+                g.drawImage(tileOf(tiles, model.index(row, col), row, col), col*w, row*h,
+                        tiles.getWidth(), tiles.getHeight(), null);
         }
-        if(tile.left != null && tile.left.isHidden() && !tile.left.isMine() && tile.left.getRightClickStatus() != 1) {
-            if(tile.left.getSymbol() == 0) {
-                openAdjZeros(tile.left);
-            }
-            else {
-                reveal(tile.left);
-            }
+        int painted = Math.max(0, lastRow - firstRow + 1) * Math.max(0, lastCol - firstCol + 1);
+        long end = System.nanoTime();
+        PAINT_NANOS.record(end - start);
+        PAINT_TILES.record(painted);
+        if(clickedAt != 0) {                        // First paint after a click, the time the player waits
+            CLICK_TO_PAINT_NANOS.record(end - clickedAt);
+            clickedAt = 0;
         }
-        if(tile.upLeft != null && tile.upLeft.isHidden() && !tile.upLeft.isMine()  && tile.upLeft.getRightClickStatus() != 1) {
-            if(tile.upLeft.getSymbol() == 0) {
-                openAdjZeros(tile.upLeft);
-            }
-            else {
-                reveal(tile.upLeft);
-            }
+        event.end();
+        if(event.shouldCommit()) {
+            event.tiles = painted;
+            event.commit();
         }
     }
 
-    // Reveals a Tile and it's contents by changing to appropriate Icon or Symbol
-    protected void reveal(Tile tile) {
-        tile.setHidden(false);
-        tile.setBackground(new Color(0,100,200));
-        tile.setBorder(BorderFactory.createBevelBorder(1));
-
-        if(tile.getRightClickStatus() == 2)
-            tile.setIcon(null);
-        if(tile.getSymbol() == 0)
-            tile.setText("");
-        else if(!tile.isMine()) {
-            if(tile.getSymbol() > 2)
-                tile.setForeground(new Color(255,150,0));
-            tile.setText(Integer.toString(tile.getSymbol()));
-        }
-        else {
-            // Add Code to notify the game that we lost
-            tile.setIcon(mine);
+    // Returns the atlas for Tiles of a size, made again when the size, font or
+    // screen changed. Every shade this board uses is drawn before painting
+    private TileAtlas atlas(int w, int h) {
+        GraphicsConfiguration screen = getGraphicsConfiguration();
+        if(atlas == null || !atlas.fits(w, h, getFont(), screen)) {
+            atlas = TileAtlas.of(w, h, getFont(), screen);
+            for(int shade : shades)
+                atlas.prepare(shade);
         }
+        return atlas;
+    }
 
-        tilesOpened++;
+    // Returns the picture of a Tile in it's current state
+    private Image tileOf(TileAtlas tiles, int cell, int row, int col) {
+        if(!model.isHidden(cell))
+            return tiles.open(model.getSymbol(cell));
+        int mark = model.getMark(cell);
+        if(gameOver && mark == BoardModel.FLAG && !model.isMine(cell))
+            return tiles.wrongFlag();
+        return tiles.hidden(shades[row+col], mark, cell == hoverCell);
     }
 
     // Opens the entire Board and shows wrongly guessed Mines
     protected void showBoard() {
-        for(int i = 0; i < xSize; i++) {
-            for(int j = 0; j < ySize; j++) {
-                if(board[i][j].isHidden())
-                    if(board[i][j].getRightClickStatus() == 1 && !board[i][j].isMine()) {
-                        board[i][j].setBackground(Color.red);
-                    }
-                    else
-                        reveal(board[i][j]);
-            }
-        }
+        gameOver = true;
+        model.showBoard();
+        repaintArea(0, 0, getWidth(), getHeight());
     }
 
     /**
      *  This class handles the actions when a Tile is clicked.
-     *  It starts and stops the Timer, updates StatusBar, opens
-     *  or marks Tiles with appropriate Icons, checks to see if
-     *  User won or Lost the Game. It also handles the case
+     *  It starts and stops the clock, opens or marks Tiles with
+     *  appropriate Icons, chords a number on a middle or
+     *  both-button click, and tells the game through it's
+     *  GameEvents when Mines are marked or it is won or lost. It also handles the case
      *  when a Tile is hovered to add cool visual effects.
      *  This class is a Private Sub-Class making it visible
      *  only to Board Class.
      */
-    private class Listener implements MouseListener {
+    private class Listener implements MouseListener, MouseMotionListener {
+
+        private static final int BOTH_BUTTONS = InputEvent.BUTTON1_DOWN_MASK | InputEvent.BUTTON3_DOWN_MASK;
 
+        private boolean chording;                   // Both buttons went down, the clicks are a chord
+
+        // Handles a click and measures how long it waited in the event queue
+        // and how long it took, which is where a stalled window shows up
         public void mouseClicked(MouseEvent event) {
-            Tile tile = (Tile)event.getSource();
-            if(!StatusBar.isTimerOn() && tile.isHidden())
-                StatusBar.startTimer();
-            if(tile.isHidden() && SwingUtilities.isRightMouseButton(event)) {
+            long now = System.nanoTime();
+            Metrics.ClickEvent jfr = new Metrics.ClickEvent();
+            jfr.begin();
+            long queued = Math.max(0, System.currentTimeMillis() - event.getWhen()) * 1000000L;
+            int opened = click(event, now);
+            if(opened >= 0) {
+                CLICK_QUEUE_NANOS.record(queued);
+                CLICK_NANOS.recordSince(now);
+                clickedAt = now;
+            }
+            jfr.end();
+            if(opened >= 0 && jfr.shouldCommit()) {
+                jfr.button = event.getButton();
+                jfr.opened = opened;
+                jfr.queueDelay = queued;
+                jfr.commit();
+            }
+        }
+
+        // Opens, marks or chords the Tile clicked. Returns the # of cells
+        // opened, or -1 if the click was ignored
+        private int click(MouseEvent event, long now) {
+            int cell = cellAt(event.getX(), event.getY());
+            if(cell < 0 || gameOver || chording)
+                return -1;
+            if(SwingUtilities.isMiddleMouseButton(event))
+                return chord(cell, now);
+            if(model.isHidden(cell) && SwingUtilities.isRightMouseButton(event)) {
+                recorder.mark(cell, now);
+                int mark = model.cycleMark(cell);
                 // If Tile has not been marked mark it with a Flag
-                if(tile.getRightClickStatus() == 0) {
-                    Game.updateMinesLeft(-1);
-                    tile.setIcon(flag);
-                    tile.toggleRightClick();
-                }
+                if(mark == BoardModel.FLAG)
+                    events.minesLeftChanged(-1);
                 // If Tile has been marked with a Flag then mark it with Question
-                else if(tile.getRightClickStatus() == 1) {
-                    Game.updateMinesLeft(1);
-                    tile.setIcon(question);
-                    tile.toggleRightClick();
-                }
-                // If Tile has been marked with Question then change to blank Tile
-                else if (tile.getRightClickStatus()==2){
-                    tile.setIcon(null);
-                    tile.toggleRightClick();
-                }
+                else if(mark == BoardModel.QUESTION)
+                    events.minesLeftChanged(1);
+                repaintCell(cell);
+                return 0;
             }
             // If Tile has not been marked and revealed
-            else if(tile.isHidden() && tile.getRightClickStatus() == 0) {
-                if(tile.isMine()) {
-                    StatusBar.stopTimer();
-                    showBoard();
-                    JOptionPane.showMessageDialog(null, "You hit a mine!", "Game Over", JOptionPane.PLAIN_MESSAGE);
-                }
-                else if(tile.getSymbol() == 0) {
-                    openAdjZeros(tile);
-                }
-                else {
-                    reveal(tile);
-                }
-                Game.checkForWin();
+            else if(model.isHidden(cell) && model.getMark(cell) == BoardModel.NO_MARK) {
+                startClock(now);
+                recorder.click(cell, now);
+                int count = model.click(cell);
+                opened(count, now);
+                return count;
             }
+            return -1;
         }
 
-        public void mouseEntered(MouseEvent event) {
-            Tile tile = (Tile)event.getSource();
-            if(tile.isHidden())
-                tile.setBackground(new Color(0,tile.getColor()+35,255));
+        // Opens the hidden neighbors of a number whose Mines are all flagged,
+        // returns the # of cells opened
+        private int chord(int cell, long now) {
+            if(cell < 0 || gameOver || model.isHidden(cell))
+                return 0;
+            int count = model.chord(cell);
+            if(count > 0) {
+                startClock(now);
+                recorder.chord(cell, now);
+                opened(count, now);
+            }
+            return count;
+        }
+
+        // Starts the clock at the first cell opened
+        private void startClock(long now) {
+            if(clock.isStarted())
+                return;
+            clock.start(now);
+            events.clockStarted(clock);
+        }
+
+        // Shows the cells opened by a click and checks if the Game is over.
+        // The clock stops at the click that ends it, then the whole Board is
+        // shown and the game is told
+        private void opened(int count, long now) {
+            if(!model.isLost() && !model.isWon()) {
+                repaintOpened(count);
+                return;
+            }
+            boolean won = model.isWon();            // Showing the Board opens the Mines too
+            clock.stop(now);
+            showBoard();
+            events.gameOver(won);
+        }
+
+        public void mouseMoved(MouseEvent event) {
+            int cell = cellAt(event.getX(), event.getY());
+            if(cell != hoverCell) {
+                repaintCell(hoverCell);
+                hoverCell = cell;
+                repaintCell(hoverCell);
+            }
         }
 
         public void mouseExited(MouseEvent event) {
-            Tile tile = (Tile)event.getSource();
-            if(tile.isHidden())
-                tile.setBackground(new Color(0,tile.getColor(),255));
+            repaintCell(hoverCell);
+            hoverCell = -1;
         }
 
-        public void mousePressed(MouseEvent event) {
+        public void mouseEntered(MouseEvent event) {
 
         }
 
-        public void mouseReleased(MouseEvent event) {
+        public void mouseDragged(MouseEvent event) {
+
+        }
 
+        public void mousePressed(MouseEvent event) {
+            chording = (event.getModifiersEx() & BOTH_BUTTONS) == BOTH_BUTTONS;
+        }
+
+        // The chord happens once both buttons are up, the clicks they send are ignored
+        public void mouseReleased(MouseEvent event) {
+            if(chording && (event.getModifiersEx() & BOTH_BUTTONS) == 0)
+                chord(cellAt(event.getX(), event.getY()), System.nanoTime());
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,331 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  This class deals with measuring the hot paths of the board: building a
+ *  board (placing mines and numbering), the flood fill when a zero is
+ *  opened, opening the whole board at game over, and loading and adding
+ *  scores. Every case runs for each board size and mine density, first to
+ *  warm up and then measured. It reports operations per second, p50 and
+ *  p99 latency and bytes allocated per operation. Results can be saved as
+ *  a baseline and later runs compared against it, failing if a case got
+ *  slower than the allowed tolerance.
+ *
+ *  Usage: java BoardBenchmark [--quick] [--filter text] [--save file]
+ *                             [--baseline file] [--tolerance 0.2]
+ */
+public final class BoardBenchmark {
+
+    private static final int[] SIZES = { 10, 64, 256, 1024, 4096 };       // Square board sides
+    private static final int[] DENSITIES = { 1, 12, 20 };                  // Percent of cells that are mines
+    private static final int MIN_OPS = 5;                                   // Fewest measured operations per case
+    private static final int MAX_OPS = 1 << 20;                             // Most latencies kept per case
+
+    private final long warmupNanos;                 // Time spent warming up each case
+    private final long measureNanos;                // Time spent measuring each case
+    private final com.sun.management.ThreadMXBean threads;
+
+    // CONSTRUCTOR
+    BoardBenchmark(long warmupMillis, long measureMillis) {
+        warmupNanos = warmupMillis * 1000000L;
+        measureNanos = measureMillis * 1000000L;
+        threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    public static void main(String args[]) throws IOException {
+        boolean quick = false;
+        String filter = "";
+        String save = null;
+        String baseline = null;
+        double tolerance = 0.2;
+        for(int i = 0; i < args.length; i++) {
+            if(args[i].equals("--quick"))
+                quick = true;
+            else if(args[i].equals("--filter"))
+                filter = args[++i];
+            else if(args[i].equals("--save"))
+                save = args[++i];
+            else if(args[i].equals("--baseline"))
+                baseline = args[++i];
+            else if(args[i].equals("--tolerance"))
+                tolerance = Double.parseDouble(args[++i]);
+            else
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+
+        BoardBenchmark bench = quick ? new BoardBenchmark(200, 500) : new BoardBenchmark(2000, 5000);
+        Map<String,Result> results = new LinkedHashMap<String,Result>();
+        System.out.println("case,ops/s,p50 us,p99 us,bytes/op");
+        for(Case c : cases(quick)) {
+            if(!c.name.contains(filter))
+                continue;
+            Result result;
+            try {
+                result = bench.run(c);
+            } finally {
+                c.finish();
+            }
+            results.put(c.name, result);
+            System.out.println(c.name + "," + result);
+        }
+
+        if(save != null)
+            saveBaseline(new File(save), results);
+        if(baseline != null && !compare(readBaseline(new File(baseline)), results, tolerance))
+            System.exit(1);
+    }
+
+    // Returns every case for every board size and mine density
+    private static List<Case> cases(boolean quick) {
+        List<Case> cases = new ArrayList<Case>();
+        for(int size : SIZES) {
+            if(quick && size > 1024)
+                continue;
+            for(int density : DENSITIES) {
+                int mines = (int)((long)size * size * density / 100);
+                String suffix = size + "x" + size + "/" + density + "%";
+                cases.add(new Case("build " + suffix) {
+                    long seed;
+                    int run() {
+                        return new BoardModel(size, size, mines, seed++).getMineCount();
+                    }
+                });
+                cases.add(new Case("floodFill " + suffix) {
+                    BoardModel model;
+                    int start;
+                    long seed;
+                    void prepare() {
+                        do {
+                            model = new BoardModel(size, size, mines, seed++);
+                            start = largestZero(model);
+                        } while(start < 0);
+                        model.getOpenings();        // Built on the first open, keep it out of the timing
+                    }
+                    int run() {
+                        return model.open(start);
+                    }
+                });
+                cases.add(new Case("showBoard " + suffix) {
+                    BoardModel model;
+                    long seed;
+                    void prepare() {
+                        model = new BoardModel(size, size, mines, seed++);
+                    }
+                    int run() {
+                        return model.showBoard();
+                    }
+                });
+            }
+        }
+        for(int scores : new int[] { 10, 10000, 1000000 }) {
+            if(quick && scores > 10000)
+                continue;
+            cases.add(new Case("scoreLoad " + scores) {
+                File file;
+                void prepare() {
+                    if(file == null)
+                        file = scoreFile(scores);
+                }
+                int run() {
+                    Leaderboard board = new Leaderboard(file, 100, null);
+                    board.load();
+                    return board.getTotal();
+                }
+                void finish() {
+                    if(file != null)
+                        file.delete();
+                }
+            });
+            cases.add(new Case("scoreAdd " + scores) {
+                File file;
+                Leaderboard board;
+                int score;
+                void prepare() {
+                    if(board == null) {
+                        file = scoreFile(scores);
+                        board = new Leaderboard(file, 100, null);
+                        board.load();
+                    }
+                }
+                int run() {
+                    board.add("bench", score++ % 1000);
+                    return board.rankOf(500);
+                }
+                void finish() {
+                    if(file != null)
+                        file.delete();
+                }
+            });
+        }
+        return cases;
+    }
+
+    // Warms up and measures a single case
+    private Result run(Case c) {
+        loop(c, warmupNanos, null);
+        long[] latencies = new long[MAX_OPS];
+        return loop(c, measureNanos, latencies);
+    }
+
+    // Runs a case until the time is up, only run() is measured
+    private Result loop(Case c, long nanos, long[] latencies) {
+        long thread = Thread.currentThread().getId();
+        long spent = 0;
+        long allocated = 0;
+        int ops = 0;
+        int sink = 0;
+        while(spent < nanos || ops < MIN_OPS) {
+            c.prepare();
+            long bytes = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            sink += c.run();
+            long time = System.nanoTime() - start;
+            allocated += threads.getThreadAllocatedBytes(thread) - bytes;
+            if(latencies != null && ops < latencies.length)
+                latencies[ops] = time;
+            spent += time;
+            ops++;
+        }
+        if(sink == 42)                              // Keeps the results from being optimized away
+            System.out.print("");
+        if(latencies == null)
+            return null;
+        long[] kept = Arrays.copyOf(latencies, Math.min(ops, latencies.length));
+        Arrays.sort(kept);
+        return new Result(ops * 1e9 / spent, kept[kept.length / 2] / 1e3,
+                kept[(int)Math.min(kept.length - 1, (long)Math.ceil(kept.length * 0.99) - 1)] / 1e3,
+                (double)allocated / ops);
+    }
+
+    // Returns the zero cell with the most zero cells after it on the same row,
+    // a cheap way to start a large flood fill, or -1 if the board has no zero
+    private static int largestZero(BoardModel model) {
+        int best = -1;
+        int bestRun = 0;
+        for(int row = 0; row < model.getRows(); row++) {
+            int run = 0;
+            for(int col = model.getCols() - 1; col >= 0; col--) {
+                int cell = model.index(row, col);
+                run = !model.isMine(cell) && model.getSymbol(cell) == 0 ? run + 1 : 0;
+                if(run > bestRun) {
+                    bestRun = run;
+                    best = cell;
+                }
+            }
+        }
+        return best;
+    }
+
+    // Returns a temporary file holding a # of scores, it's made when a case
+    // first needs it so cases that are filtered out never write one
+    private static File scoreFile(int scores) {
+        try {
+            File file = File.createTempFile("bench-score-" + scores + "-", ".txt");
+            file.deleteOnExit();
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
+                for(int i = 0; i < scores; i++) {
+                    bw.write("player " + i + " " + i % 1000 * 7919 % 1000);
+                    bw.newLine();
+                }
+            }
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Saves the operations per second of every case, one "case,ops/s" per line
+    private static void saveBaseline(File file, Map<String,Result> results) throws IOException {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
+            for(Map.Entry<String,Result> entry : results.entrySet()) {
+                bw.write(entry.getKey() + "," + entry.getValue().opsPerSecond);
+                bw.newLine();
+            }
+        }
+    }
+
+    // Reads a baseline written by saveBaseline
+    private static Map<String,Double> readBaseline(File file) throws IOException {
+        Map<String,Double> baseline = new LinkedHashMap<String,Double>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String strLine;
+            while((strLine = reader.readLine()) != null) {
+                int split = strLine.lastIndexOf(',');
+                if(split > 0)
+                    baseline.put(strLine.substring(0, split), Double.parseDouble(strLine.substring(split + 1)));
+            }
+        }
+        return baseline;
+    }
+
+    // Prints every case slower than the baseline allows, returns true if there was none
+    private static boolean compare(Map<String,Double> baseline, Map<String,Result> results, double tolerance) {
+        boolean passed = true;
+        for(Map.Entry<String,Result> entry : results.entrySet()) {
+            Double before = baseline.get(entry.getKey());
+            if(before == null)
+                continue;
+            double now = entry.getValue().opsPerSecond;
+            if(now < before * (1 - tolerance)) {
+                System.err.printf("REGRESSION %s: %.1f ops/s, baseline %.1f ops/s%n", entry.getKey(), now, before);
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    /**
+     *  A single thing to measure. prepare() runs before every operation and
+     *  is not measured, run() is the operation and returns any number so
+     *  it's work can not be optimized away. finish() runs once after the
+     *  case is measured to clean up what prepare() made.
+     */
+    private abstract static class Case {
+
+        protected final String name;
+
+        // CONSTRUCTOR
+        Case(String name) {
+            this.name = name;
+        }
+
+        void prepare() {
+
+        }
+
+        abstract int run();
+
+        void finish() {
+
+        }
+    }
+
+    /**
+     *  What was measured for a single case.
+     */
+    private static final class Result {
+
+        private final double opsPerSecond;
+        private final double p50;                   // Microseconds
+        private final double p99;                   // Microseconds
+        private final double bytesPerOp;
+
+        // CONSTRUCTOR
+        Result(double opsPerSecond, double p50, double p99, double bytesPerOp) {
+            this.opsPerSecond = opsPerSecond;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        public String toString() {
+            return String.format("%.1f,%.2f,%.2f,%.0f", opsPerSecond, p50, p99, bytesPerOp);
+        }
+    }
+}
\ No newline at end of file
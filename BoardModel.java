@@ -0,0 +1,563 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *  This class deals with the state of a Minesweeper board without any
+ *  Swing parts, so boards can be created and played on machines with no
+ *  display. Every cell is packed into a single byte of a flat array:
+ *  the low 4 bits hold the symbol (# of adjacent mines, or 9 for a mine),
+ *  one bit tells if the cell is still hidden and two bits hold the right
+ *  click mark. The array is laid out by a Topology, which puts a ring of
+ *  border cells around the board so neighbors are found by adding offsets
+ *  to an index. Cells are addressed by an index that can be obtained from
+ *  a row and column with index(row, col). The mines are placed from a
+ *  seed, so any board can be built again from (rows, cols, mines, seed).
+ */
+public final class BoardModel {
+
+    // Cell symbols and marks
+    protected static final int MINE = 9;            // Symbol used to represent a Mine
+    protected static final int NO_MARK = 0;         // Cell has not been right clicked
+    protected static final int FLAG = 1;            // Cell has been marked with a Flag
+    protected static final int QUESTION = 2;        // Cell has been marked with a Question
+
+    // Boards with at least this many cells are numbered in parallel
+    private static final int PARALLEL_CELLS = 1 << 20;
+    private static final int MIN_TASK_ROWS = 64;
+
+    // Work done by every board, sizes in cells and times in nanoseconds
+    private static final Metrics.Histogram GENERATE_NANOS = Metrics.histogram("board.generate.nanos");
+    private static final Metrics.Histogram FLOOD_FILL_NANOS = Metrics.histogram("floodfill.nanos");
+    private static final Metrics.Histogram FLOOD_FILL_CELLS = Metrics.histogram("floodfill.cells");
+    private static final Metrics.Counter REVEALED = Metrics.counter("cells.revealed");
+
+    // Bit layout of a cell
+    private static final int SYMBOL_MASK = 0x0F;
+    private static final int HIDDEN = 0x10;
+    private static final int MARK_SHIFT = 5;
+    private static final int MARK_MASK = 0x60;
+    private static final int BORDER = 0x80;         // Set on the ring of cells around the board
+
+    private final Topology topology;                // Layout of the cells and their neighbors
+    private final byte[] cells;                     // Packed state of every cell
+    private final int rows;                         // # of Rows
+    private final int cols;                         // # of Columns
+    private final int nMines;                       // # of Mines
+    private final long seed;                        // Seed the Mines were placed from
+    private int tilesOpened;                        // Used to keep track of cells opened
+    private boolean lost;                           // True once a Mine has been clicked
+    private int[] opened;                           // Cells opened by the last open or showBoard
+    private byte[] mineMask;                        // Bit i set if the neighbor at offset i is a Mine
+    private byte[] flagMask;                        // Bit i set if the neighbor at offset i has a Flag
+    private OpeningIndex openings;                  // Regions a left click on a zero opens
+
+    // CONSTRUCTOR
+    public BoardModel(int rows, int cols, int mines) {
+        this(rows, cols, mines, new SplittableRandom().nextLong());
+    }
+
+    // CONSTRUCTOR
+    public BoardModel(int rows, int cols, int mines, long seed) {
+        this(Topology.square(rows, cols), mines, seed);
+    }
+
+    // CONSTRUCTOR
+    public BoardModel(Topology topology, int mines, long seed) {
+        long start = System.nanoTime();
+        Metrics.GenerateEvent event = new Metrics.GenerateEvent();
+        event.begin();
+        rows = topology.getRows();
+        cols = topology.getCols();
+        if(rows <= 0 || cols <= 0 || mines < 0 || mines > (long)rows*cols)
+            throw new IllegalArgumentException("Invalid board " + rows + "x" + cols + " with " + mines + " mines");
+        this.topology = topology;
+        nMines = mines;
+        this.seed = seed;
+        cells = new byte[topology.size()];
+        tilesOpened = 0;
+        for(int i = 0; i < cells.length; i++)
+            cells[i] = topology.isBorder(i) ? (byte)BORDER : HIDDEN;
+        placeMines();
+        setBoardNumbers();
+        GENERATE_NANOS.recordSince(start);
+        event.end();
+        if(event.shouldCommit()) {
+            event.rows = rows;
+            event.cols = cols;
+            event.mines = mines;
+            event.attempts = 1;
+            event.commit();
+        }
+    }
+
+    // Randomly places mines throughout the board represented by an integer 9.
+    // Uses Floyd's sampling so it picks each of the nMines cells with a single
+    // draw, no matter how dense the board is, and every layout is equally likely
+    private void placeMines() {
+        SplittableRandom generator = new SplittableRandom(seed);
+        int size = rows*cols;
+        for(int j = size - nMines; j < size; j++) {
+            int cell = topology.cellAt(generator.nextInt(j + 1));
+            if(isMine(cell))                            // If picked cell is a mine then take j,
+                cell = topology.cellAt(j);              // which can not have been picked yet
+            cells[cell] = (byte)(cells[cell] | MINE);
+        }
+    }
+
+    // Sets the # of adjacent Mines of every cell that is not a Mine. Large
+    // boards are split into bands of rows that are numbered in parallel
+    private void setBoardNumbers() {
+        if(!topology.isUniform())
+            countNeighbors();
+        else if(cells.length < PARALLEL_CELLS)
+            setBoardNumbers(0, rows);
+        else
+            ForkJoinPool.commonPool().invoke(new NumberTask(0, rows));
+    }
+
+    // Sets the # of adjacent Mines of every cell in rows [from, to) with a
+    // separable 3x3 box sum. Each row is first summed horizontally into one of
+    // three rolling buffers, then a cell's count is the sum of the buffers of
+    // the row above, it's own row and the row below. The border ring holds no
+    // Mines, so the rows and columns around the board need no special case.
+    // A cell that is not a Mine adds nothing to it's own box, so the box sum
+    // is exactly it's count. Only the Mine symbol is read from other rows, and
+    // that never changes while numbering, so bands of rows can run at the
+    // same time
+    private void setBoardNumbers(int from, int to) {
+        byte[][] sums = new byte[3][cols];
+        sumRow(from - 1, sums[(from + 2) % 3]);
+        sumRow(from, sums[from % 3]);
+        for(int r = from; r < to; r++) {
+            byte[] above = sums[(r + 2) % 3];
+            byte[] current = sums[r % 3];
+            byte[] below = sums[(r + 1) % 3];
+            sumRow(r + 1, below);
+            int base = index(r, 0);
+            for(int c = 0; c < cols; c++) {
+                int cell = base + c;
+                if(!isMine(cell))
+                    cells[cell] = (byte)(cells[cell] | (above[c] + current[c] + below[c]));
+            }
+        }
+    }
+
+    // Stores the # of Mines in every horizontal run of 3 cells of a row,
+    // rows -1 and rows are the border above and below the board
+    private void sumRow(int r, byte[] sum) {
+        int base = topology.index(r, 0);
+        int left = isMine(base - 1) ? 1 : 0;
+        int middle = isMine(base) ? 1 : 0;
+        for(int c = 0; c < cols; c++) {
+            int right = isMine(base + c + 1) ? 1 : 0;
+            sum[c] = (byte)(left + middle + right);
+            left = middle;
+            middle = right;
+        }
+    }
+
+    // Sets the # of adjacent Mines of every cell by walking the neighbor
+    // offsets of the topology, used when cells have different neighbors
+    private void countNeighbors() {
+        for(int cell = 0; cell < cells.length; cell++) {
+            if(!isCell(cell) || isMine(cell))
+                continue;
+            int adjMines = 0;
+            for(int offset : topology.offsets(cell)) {
+                if(isMine(cell + offset))
+                    adjMines++;
+            }
+            cells[cell] = (byte)(cells[cell] | adjMines);
+        }
+    }
+
+    // Returns the index of the cell at a row and column
+    protected int index(int row, int col) {
+        return topology.index(row, col);
+    }
+
+    // Returns the row of a cell
+    protected int rowOf(int cell) {
+        return topology.rowOf(cell);
+    }
+
+    // Returns the column of a cell
+    protected int colOf(int cell) {
+        return topology.colOf(cell);
+    }
+
+    // Returns the layout of the cells
+    protected Topology getTopology() {
+        return topology;
+    }
+
+    // Returns the # of entries used to store the board with it's border,
+    // every cell index is smaller than this
+    protected int getIndexLimit() {
+        return cells.length;
+    }
+
+    // Returns true if an index is a cell of the board and not part of it's border
+    protected boolean isCell(int cell) {
+        return (cells[cell] & BORDER) == 0;
+    }
+
+    // Returns the # of Rows
+    protected int getRows() {
+        return rows;
+    }
+
+    // Returns the # of Columns
+    protected int getCols() {
+        return cols;
+    }
+
+    // Returns the # of Mines on a board
+    protected int getMineCount() {
+        return nMines;
+    }
+
+    // Returns the seed the Mines were placed from
+    protected long getSeed() {
+        return seed;
+    }
+
+    // Returns the area of the Board (rows*columns)
+    protected int getBoardSize() {
+        return rows*cols;
+    }
+
+    // Returns the # of cells opened
+    protected int getTilesOpened() {
+        return tilesOpened;
+    }
+
+    // Returns true once every cell that is not a Mine has been opened
+    protected boolean isWon() {
+        return !lost && tilesOpened == rows*cols - nMines;
+    }
+
+    // Returns true once a Mine has been clicked
+    protected boolean isLost() {
+        return lost;
+    }
+
+    // Returns the symbol of a cell
+    protected int getSymbol(int cell) {
+        return cells[cell] & SYMBOL_MASK;
+    }
+
+    // Returns true if cell is a mine
+    protected boolean isMine(int cell) {
+        return (cells[cell] & SYMBOL_MASK) == MINE;
+    }
+
+    // Returns true if a cell has not been opened
+    protected boolean isHidden(int cell) {
+        return (cells[cell] & HIDDEN) != 0;
+    }
+
+    // Returns NO_MARK, FLAG or QUESTION depending on the right click status
+    protected int getMark(int cell) {
+        return (cells[cell] & MARK_MASK) >>> MARK_SHIFT;
+    }
+
+    // Changes the mark from NO_MARK to FLAG to QUESTION and back to NO_MARK,
+    // returns the new mark
+    protected int cycleMark(int cell) {
+        int mark = (getMark(cell) + 1) % 3;
+        cells[cell] = (byte)((cells[cell] & ~MARK_MASK) | (mark << MARK_SHIFT));
+        if(flagMask != null && mark != NO_MARK)     // A Flag came (FLAG) or went (QUESTION)
+            flipMask(flagMask, cell);
+        if(openings != null && mark != NO_MARK)
+            openings.flagged(cell, mark == FLAG ? 1 : -1);
+        return mark;
+    }
+
+    // Opens a single cell, returns false if it was already open
+    protected boolean reveal(int cell) {
+        if(!isHidden(cell))
+            return false;
+        cells[cell] = (byte)(cells[cell] & ~HIDDEN);
+        tilesOpened++;
+        return true;
+    }
+
+    // Does what a left click on a cell does: a cell that is hidden and not
+    // marked is opened, anything else or any click once the game is over is
+    // ignored. Returns the # of cells opened, the cells can be read from
+    // getOpened()
+    protected int click(int cell) {
+        if(lost || isWon() || !isHidden(cell) || getMark(cell) != NO_MARK)
+            return 0;
+        int count = open(cell);
+        if(isMine(cell))
+            lost = true;
+        return count;
+    }
+
+    // Opens a cell the way a left click does. A cell with no adjacent Mines
+    // also opens every connected cell with no adjacent Mines and their borders.
+    // Returns the # of cells opened, the cells themselves can be read from
+    // getOpened() until the next call
+    protected int open(int cell) {
+        if(!isHidden(cell))
+            return 0;
+        if(isMine(cell) || getSymbol(cell) != 0) {
+            reveal(cell);
+            opened()[0] = cell;
+            REVEALED.increment();
+            return 1;
+        }
+        return openAdjZeros(cell);
+    }
+
+    // Does what a click on an opened number does: if as many neighbors have
+    // a Flag as the number says, every other hidden neighbor is opened and
+    // any zeros among them spread like a left click. Hitting a Mine loses.
+    // Nothing happens once the game is over. Returns the # of cells opened,
+    // the cells can be read from getOpened()
+    protected int chord(int cell) {
+        if(lost || isWon() || isHidden(cell) || !isCell(cell))
+            return 0;
+        int symbol = getSymbol(cell);
+        if(symbol == 0 || symbol == MINE)
+            return 0;
+        masks();
+        int flags = flagMask[cell] & 0xFF;
+        if(Integer.bitCount(flags) != symbol)
+            return 0;
+        if((mineMask[cell] & 0xFF & ~flags) != 0)   // A Flag is wrong, so a Mine gets opened
+            lost = true;
+        int[] offsets = topology.offsets(cell);
+        int[] queue = opened();
+        int tail = 0;
+        for(int open = ~flags & ((1 << offsets.length) - 1); open != 0; open &= open - 1) {
+            int next = cell + offsets[Integer.numberOfTrailingZeros(open)];
+            if(reveal(next))
+                queue[tail++] = next;
+        }
+        return floodFill(queue, tail);
+    }
+
+    // Returns the Mine and Flag masks of the neighbors of every cell, made the
+    // first time they are needed. Flags are kept up to date from then on
+    private void masks() {
+        if(mineMask == null) {
+            mineMask = new byte[cells.length];
+            for(int cell = 0; cell < cells.length; cell++) {
+                if(isCell(cell) && isMine(cell))
+                    flipMask(mineMask, cell);
+            }
+        }
+        if(flagMask == null) {
+            flagMask = new byte[cells.length];
+            for(int cell = 0; cell < cells.length; cell++) {
+                if(isCell(cell) && getMark(cell) == FLAG)
+                    flipMask(flagMask, cell);
+            }
+        }
+    }
+
+    // Flips the bit of a cell in the mask of each of it's neighbors
+    private void flipMask(byte[] mask, int cell) {
+        int[] offsets = topology.offsets(cell);
+        for(int i = 0; i < offsets.length; i++)
+            mask[cell + offsets[i]] ^= 1 << topology.opposite(i);
+    }
+
+    // Opens all cells connected to a cell with no adjacent Mines
+    private int openAdjZeros(int cell) {
+        int[] queue = opened();
+        reveal(cell);
+        queue[0] = cell;
+        return floodFill(queue, 1);
+    }
+
+    // Runs spread() and records how many cells it opened and how long it took.
+    // Counted once per fill, never per cell, so the fill itself stays as fast
+    private int floodFill(int[] queue, int tail) {
+        long start = System.nanoTime();
+        Metrics.FloodFillEvent event = new Metrics.FloodFillEvent();
+        event.begin();
+        int count = spread(queue, tail);
+        FLOOD_FILL_NANOS.recordSince(start);
+        FLOOD_FILL_CELLS.record(count);
+        REVEALED.add(count);
+        event.end();
+        if(event.shouldCommit()) {
+            event.cells = count;
+            event.commit();
+        }
+        return count;
+    }
+
+    // Opens every cell connected through zeros to the first tail cells of the
+    // opened buffer, which are already open, adding them to the end of the
+    // buffer. Returns the # of cells in the buffer at the end
+    private int spread(int[] queue, int tail) {
+        int initial = tail;
+        for(int head = 0; head < initial; head++) {
+            if(getSymbol(queue[head]) == 0)         // Only zeros spread to their neighbors
+                tail = openRegion(queue[head], queue, tail);
+        }
+        return tail;
+    }
+
+    // Opens the rest of the opening around an opened zero from the cells the
+    // OpeningIndex keeps for it, or with a search if a Flag cuts it
+    private int openRegion(int cell, int[] queue, int tail) {
+        OpeningIndex index = getOpenings();
+        int region = index.regionOf(cell);
+        if(index.isBlocked(region))
+            return search(cell, queue, tail);
+        int[] listed = index.getCells();
+        for(int i = index.start(region); i < index.end(region); i++) {
+            int next = listed[i];
+            if(isHidden(next) && getMark(next) != FLAG) {
+                reveal(next);
+                queue[tail++] = next;
+            }
+        }
+        return tail;
+    }
+
+    // Opens every cell connected through zeros to an opened zero, using the
+    // buffer past tail as a queue. A cell is queued at the moment it is opened
+    // so its hidden bit doubles as the visited mark and every cell is queued
+    // at most once. Returns the # of cells in the buffer at the end
+    private int search(int cell, int[] queue, int tail) {
+        int head = tail;
+        for(int current = cell; ; current = queue[head++]) {
+            if(getSymbol(current) == 0) {
+                for(int offset : topology.offsets(current)) {
+                    int next = current + offset;            // Border cells are never hidden
+                    if(isHidden(next) && !isMine(next) && getMark(next) != FLAG) {
+                        reveal(next);
+                        queue[tail++] = next;
+                    }
+                }
+            }
+            if(head == tail)
+                return tail;
+        }
+    }
+
+    // Returns the openings of the board, labeled the first time they are needed
+    protected OpeningIndex getOpenings() {
+        if(openings == null)
+            openings = new OpeningIndex(this);
+        return openings;
+    }
+
+    // Opens the entire Board except cells wrongly marked with a Flag.
+    // Returns the # of cells opened, the cells can be read from getOpened()
+    protected int showBoard() {
+        int[] shown = opened();
+        int count = 0;
+        for(int cell = 0; cell < cells.length; cell++) {
+            if(isHidden(cell) && !(getMark(cell) == FLAG && !isMine(cell))) {   // Skips the border
+                reveal(cell);
+                shown[count++] = cell;
+            }
+        }
+        REVEALED.add(count);
+        return count;
+    }
+
+    // Returns the cells opened by the last call to open() or showBoard().
+    // The array is reused, only the first (returned count) entries are valid
+    protected int[] getOpened() {
+        return opened();
+    }
+
+    // Lets the board report opened cells in a buffer shared with other boards,
+    // so many small boards do not each keep one. Only safe when all of them
+    // are used from a single thread. The buffer must hold rows*cols cells
+    protected void shareOpened(int[] buffer) {
+        if(buffer.length < rows*cols)
+            throw new IllegalArgumentException("Buffer too small for " + rows + "x" + cols);
+        opened = buffer;
+    }
+
+    // Returns the buffer of opened cells, created the first time it is needed
+    private int[] opened() {
+        if(opened == null)
+            opened = new int[rows*cols];
+        return opened;
+    }
+
+    // Returns a copy of everything a player can change on the board
+    protected State saveState() {
+        return new State(cells.clone(), tilesOpened, lost);
+    }
+
+    // Puts the board back the way it was when a State was saved. The State
+    // must come from a board with the same size
+    protected void restoreState(State state) {
+        System.arraycopy(state.cells, 0, cells, 0, cells.length);
+        tilesOpened = state.tilesOpened;
+        lost = state.lost;
+        flagMask = null;                            // Made again from the Flags when needed
+        if(openings != null)
+            openings.countFlags(this);
+    }
+
+    // Debugger function to print the Board in console
+    protected void printBoard() {
+        StringBuilder out = new StringBuilder();
+        for(int r = 0; r < rows; r++) {
+            for(int c = 0; c < cols; c++)
+                out.append(getSymbol(index(r, c))).append(' ');
+            out.append('\n');
+        }
+        System.out.print(out);
+    }
+
+    /**
+     *  This class numbers a band of rows of the board. Bands that are too
+     *  large are split in half and numbered in parallel by the fork-join
+     *  pool. This class is a Private Sub-Class making it visible only to
+     *  BoardModel Class.
+     */
+    @SuppressWarnings("serial")
+    private class NumberTask extends RecursiveAction {
+
+        private final int from;                 // First row of the band
+        private final int to;                   // Row after the last row of the band
+
+        // CONSTRUCTOR
+        NumberTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if(to - from <= MIN_TASK_ROWS || (long)(to - from)*cols <= PARALLEL_CELLS / 8) {
+                setBoardNumbers(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new NumberTask(from, middle), new NumberTask(middle, to));
+        }
+    }
+
+    /**
+     *  A copy of the cells of a board and what has been opened, used to
+     *  jump back to an earlier point of a game.
+     */
+    protected static final class State {
+
+        private final byte[] cells;
+        private final int tilesOpened;
+        private final boolean lost;
+
+        // CONSTRUCTOR
+        State(byte[] cells, int tilesOpened, boolean lost) {
+            this.cells = cells;
+            this.tilesOpened = tilesOpened;
+            this.lost = lost;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,79 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *  This class deals with having boards ready before they are asked for.
+ *  A pool holds a few boards of one size, made on a background thread,
+ *  so starting a game only takes one that is already built instead of
+ *  placing Mines or searching for a no-guess board while the window
+ *  waits. Every time a board is taken the pool is filled up again in the
+ *  background. If the pool is ever empty, like after many restarts in a
+ *  row on a slow machine, the board is made on the spot. All pools share
+ *  one background thread, and the no-guess search gets a single worker of
+ *  it's own that the thread waits on, so they never take more than one core.
+ */
+public final class BoardPool {
+
+    private static final int DEFAULT_SIZE = 2;      // Boards kept ready in each pool
+
+    // Single thread that fills every pool, it never keeps the program running
+    private static final ExecutorService FILLER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "board-pool");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    // Single worker for the no-guess seed search, instead of one per core
+    private static final ForkJoinPool SEARCH = new ForkJoinPool(1);
+
+    private final int rows;                         // # of Rows of every board
+    private final int cols;                         // # of Columns of every board
+    private final int mines;                        // # of Mines of every board
+    private final boolean noGuess;                  // True if boards must never need a guess
+    private final ArrayBlockingQueue<BoardModel> ready;     // Boards made and not taken yet
+
+    // CONSTRUCTOR
+    BoardPool(int rows, int cols, int mines, boolean noGuess) {
+        this(rows, cols, mines, noGuess, DEFAULT_SIZE);
+    }
+
+    // CONSTRUCTOR
+    BoardPool(int rows, int cols, int mines, boolean noGuess, int size) {
+        this.rows = rows;
+        this.cols = cols;
+        this.mines = mines;
+        this.noGuess = noGuess;
+        ready = new ArrayBlockingQueue<BoardModel>(size);
+        FILLER.execute(this::fill);
+    }
+
+    // Returns a board nobody has played, a ready one if there is one
+    protected BoardModel take() {
+        BoardModel model = ready.poll();
+        FILLER.execute(this::fill);
+        return model != null ? model : make();
+    }
+
+    // Makes boards until the pool is full, runs on the background thread
+    private void fill() {
+        while(ready.remainingCapacity() > 0) {
+            try {
+                if(!ready.offer(make()))
+                    return;
+            } catch (RuntimeException e) {
+                System.err.println("Error: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    // Makes a single board
+    private BoardModel make() {
+        if(noGuess)
+            return new NoGuessGenerator(rows, cols, mines, SEARCH).generate();
+        return new BoardModel(rows, cols, mines);
+    }
+}
\ No newline at end of file
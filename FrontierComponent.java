@@ -0,0 +1,238 @@
+import java.util.SplittableRandom;
+
+/**
+ *  This class deals with one independent piece of the frontier of a board.
+ *  It holds a group of hidden cells that are not known yet, together with
+ *  the opened numbers that touch them, where no number touches a cell of
+ *  another group. Every way of placing mines on the group's cells that
+ *  agrees with all of it's numbers is counted by backtracking, split by how
+ *  many mines the placement uses. From those counts a Solver can tell which
+ *  cells are safe or mines in every placement, and a probability engine can
+ *  weigh the placements against the mines left on the rest of the board.
+ *  Groups too large to count exactly can be estimated by sampling instead.
+ */
+public final class FrontierComponent {
+
+    protected final int[] cells;                    // Hidden cells, the unknowns
+    protected final int[] numbers;                  // Opened numbers touching those cells
+    protected double[] solutions;                   // # of placements by # of mines used
+    protected double[][] hits;                      // # of placements by # of mines where a cell is a mine
+    protected boolean exact;                        // True if the counts are exact, not estimated
+
+    private int[] need;                             // Mines each number needs among the cells
+    private int[] free;                             // Cells each number touches
+    private int[][] touching;                       // Numbers touching each cell
+
+    // CONSTRUCTOR
+    FrontierComponent(int[] cells, int[] numbers) {
+        this.cells = cells;
+        this.numbers = numbers;
+    }
+
+    // Counts every placement of mines that agrees with the numbers. known holds
+    // the cells already known to be mines (Solver.MINE), slot maps a cell to
+    // it's position in cells and must hold -1 for every other index. Returns
+    // false if it needed more than budget steps, the counts are then invalid
+    protected boolean enumerate(BoardModel model, byte[] known, int[] slot, long budget) {
+        prepare(model, known, slot);
+        Walk walk = new Walk(budget);
+        exact = walk.search(0, 0);
+        solutions = walk.solutions;
+        hits = walk.hits;
+        return exact;
+    }
+
+    // Estimates the counts by building samples placements one cell at a time.
+    // A cell where both values still fit is a coin flip, and every finished
+    // placement is counted with the inverse of the chance of building it, so
+    // the estimated counts average out to the exact ones. prepare() must have
+    // been called first
+    protected void sample(int samples, SplittableRandom random) {
+        Walk walk = new Walk(Long.MAX_VALUE);
+        for(int i = 0; i < samples; i++)
+            walk.sample(random);
+        double scale = 1.0 / samples;
+        for(int k = 0; k < walk.solutions.length; k++) {
+            walk.solutions[k] *= scale;
+            for(int v = 0; v < cells.length; v++)
+                walk.hits[k][v] *= scale;
+        }
+        exact = false;
+        solutions = walk.solutions;
+        hits = walk.hits;
+    }
+
+    // Mixes in the counts of another estimate of the same group, each side
+    // weighted by it's share of the samples
+    protected void merge(FrontierComponent other, double weight, double otherWeight) {
+        for(int k = 0; k < solutions.length; k++) {
+            solutions[k] = solutions[k]*weight + other.solutions[k]*otherWeight;
+            for(int v = 0; v < cells.length; v++)
+                hits[k][v] = hits[k][v]*weight + other.hits[k][v]*otherWeight;
+        }
+    }
+
+    // Returns a group with the same cells and numbers that shares this one's
+    // prepared numbers, so it can be sampled on another thread
+    protected FrontierComponent copy() {
+        FrontierComponent copy = new FrontierComponent(cells, numbers);
+        copy.need = need;
+        copy.free = free;
+        copy.touching = touching;
+        return copy;
+    }
+
+    // Builds the numbers each cell touches and how many mines each number
+    // needs, the arguments are the same as for enumerate()
+    protected void prepare(BoardModel model, byte[] known, int[] slot) {
+        if(touching != null)
+            return;
+        Topology topology = model.getTopology();
+        for(int i = 0; i < cells.length; i++)
+            slot[cells[i]] = i;
+
+        need = new int[numbers.length];
+        free = new int[numbers.length];
+        int[] touchCount = new int[cells.length];
+        for(int j = 0; j < numbers.length; j++) {
+            int number = numbers[j];
+            need[j] = model.getSymbol(number);
+            for(int offset : topology.offsets(number)) {
+                int next = number + offset;
+                if(known[next] == Solver.MINE)
+                    need[j]--;
+                else if(slot[next] >= 0) {
+                    free[j]++;
+                    touchCount[slot[next]]++;
+                }
+            }
+        }
+        touching = new int[cells.length][];
+        for(int i = 0; i < cells.length; i++)
+            touching[i] = new int[touchCount[i]];
+        for(int j = 0; j < numbers.length; j++) {
+            for(int offset : topology.offsets(numbers[j])) {
+                int s = slot[numbers[j] + offset];
+                if(s >= 0)
+                    touching[s][--touchCount[s]] = j;
+            }
+        }
+        for(int i = 0; i < cells.length; i++)
+            slot[cells[i]] = -1;
+    }
+
+    // Returns the # of placements that agree with the numbers
+    protected double totalSolutions() {
+        double total = 0;
+        for(double s : solutions)
+            total += s;
+        return total;
+    }
+
+    // Returns the # of placements where the i-th cell is a mine
+    protected double totalHits(int i) {
+        double total = 0;
+        for(double[] row : hits)
+            total += row[i];
+        return total;
+    }
+
+    /**
+     *  The state of one walk over the cells of the group, so several walks
+     *  can sample the same group at the same time.
+     */
+    private final class Walk {
+
+        private final int[] needLeft;               // Mines each number still needs
+        private final int[] freeLeft;               // Unassigned cells each number still touches
+        private final boolean[] assigned;           // Mine or not for each cell
+        private final double[] solutions;
+        private final double[][] hits;
+        private long budget;                        // Steps left before the search gives up
+
+        // CONSTRUCTOR
+        Walk(long budget) {
+            needLeft = need.clone();
+            freeLeft = free.clone();
+            assigned = new boolean[cells.length];
+            solutions = new double[cells.length + 1];
+            hits = new double[cells.length + 1][cells.length];
+            this.budget = budget;
+        }
+
+        // Tries both values for cell v and goes on with the next cell
+        private boolean search(int v, int mines) {
+            if(--budget < 0)
+                return false;
+            if(v == cells.length) {
+                count(mines, 1);
+                return true;
+            }
+            for(int value = 0; value <= 1; value++) {
+                if(!fits(v, value))
+                    continue;
+                assign(v, value, 1);
+                boolean done = search(v + 1, mines + value);
+                assign(v, value, -1);
+                if(!done)
+                    return false;
+            }
+            return true;
+        }
+
+        // Builds one random placement and counts it with the inverse of it's chance
+        private void sample(SplittableRandom random) {
+            double weight = 1;
+            int mines = 0;
+            int v = 0;
+            for(; v < cells.length; v++) {
+                boolean safeFits = fits(v, 0);
+                boolean mineFits = fits(v, 1);
+                int value;
+                if(safeFits && mineFits) {
+                    value = random.nextBoolean() ? 1 : 0;
+                    weight *= 2;
+                }
+                else if(safeFits || mineFits)
+                    value = mineFits ? 1 : 0;
+                else
+                    break;                          // Dead end, counts as zero
+                assign(v, value, 1);
+                mines += value;
+            }
+            if(v == cells.length)
+                count(mines, weight);
+            for(int i = v - 1; i >= 0; i--)
+                assign(i, assigned[i] ? 1 : 0, -1);
+        }
+
+        // Counts the current placement of mines
+        private void count(int mines, double weight) {
+            solutions[mines] += weight;
+            double[] row = hits[mines];
+            for(int i = 0; i < cells.length; i++) {
+                if(assigned[i])
+                    row[i] += weight;
+            }
+        }
+
+        // Returns true if giving cell v a value keeps every number it touches solvable
+        private boolean fits(int v, int value) {
+            for(int j : touching[v]) {
+                int left = needLeft[j] - value;
+                if(left < 0 || left > freeLeft[j] - 1)
+                    return false;
+            }
+            return true;
+        }
+
+        // Gives cell v a value (direction 1) or takes it back (direction -1)
+        private void assign(int v, int value, int direction) {
+            assigned[v] = direction > 0 && value == 1;
+            for(int j : touching[v]) {
+                needLeft[j] -= value*direction;
+                freeLeft[j] -= direction;
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -10,44 +10,54 @@ import javax.swing.*;
 /**
  *  This class deals with the logic of the Game. The logic includes things
  *  like performing actions when different Menus are clicked, creating
- *  appropriate Board size according to difficulty, checking if User won
- *  the Game and updating necessary statusBar elements
+ *  appropriate Board size according to difficulty, handling the end of
+ *  the Game and updating necessary statusBar elements. Every window is a
+ *  Game of it's own that owns it's Board, clock, Mine counter and status
+ *  bar, and hears about it's Board through GameEvents. Only the ScoreBoard
+ *  it records scores to is handed in, so any number of Games can be open
+ *  in one program and share the score files.
  */
-public class Game extends JFrame implements MouseListener, ActionListener {
+public class Game extends JFrame implements MouseListener, ActionListener, GameEvents {
 
     private Container container;                // Contains the gameBoard and statusBar
     private Menu toolbar;                       // Used for the top Game Menu
-    private static StatusBar statusBar;         // Used to display Game Information
-    private static ScoreBoard scoreBoard;       // Used to save Players' Scores
-    private static Board gameBoard;             // Game Board used for Minesweeper
+    private StatusBar statusBar;                // Used to display Game Information
+    private final ScoreBoard scoreBoard;        // Used to save Players' Scores
+    private Board gameBoard;                    // Game Board used for Minesweeper
     private Level gameMode;                     // Used to set Difficulty of the Game
-    private static int minesLeft;               // Used to display # of Mines left to Flag
-    // Game constants
-    private static int WIN_CONDITION;           // Used to check if User won the Game
-    private final int MINES_EASY = 10;          // # of Mines for Easy Level
-    private final int MINES_MEDIUM = 40;        // # of Mines for Medium Level
-    private final int MINES_HARD = 60;          // # of Mines for Hard Level
-
-    // Represents the Difficulty of the Game and # of Mines
+    private int minesLeft;                      // Used to display # of Mines left to Flag
+    private final Map<Level,BoardPool> pools;   // Boards made ahead of time for each Level
+    private final Map<Level,BoardPool> noGuessPools;    // Same, for boards that never need a guess
+
+    // Represents the Difficulty of the Game, it's size and # of Mines
     protected enum Level {
-        EASY(10), MEDIUM(40), HARD(60);
+        EASY(10, 10, 10), MEDIUM(15, 15, 40), HARD(15, 20, 60);
 
+        int rows;
+        int cols;
         int mines;
 
-        Level(int m) {
+        Level(int r, int c, int m) {
+            rows = r;
+            cols = c;
             mines = m;
         }
     }
 
     // CONSTRUCTOR
-    Game() {
+    Game(ScoreBoard scoreBoard) {
+        this.scoreBoard = scoreBoard;
         container = getContentPane();
+        pools = new EnumMap<Level,BoardPool>(Level.class);
+        noGuessPools = new EnumMap<Level,BoardPool>(Level.class);
+        for(Level lv : Level.values()) {
+            pools.put(lv, new BoardPool(lv.rows, lv.cols, lv.mines, false));
+            noGuessPools.put(lv, new BoardPool(lv.rows, lv.cols, lv.mines, true));
+        }
         // Initializes all parts of the Game
         initializeToolbar();
         initializedBoard();
         initializeGameElements();
-        // Sets the Win condition appropriately according to Board size and Mine count
-        WIN_CONDITION = gameBoard.getBoardSize() - gameBoard.getMineCount();
 
         setResizable(false);
         setVisible(true);
@@ -55,8 +65,10 @@ public class Game extends JFrame implements MouseListener, ActionListener {
     }
 
     public static void main(String args[]) {
-        Game newGame = new Game();
+        Metrics.start();
+        ScoreBoard scoreBoard = new ScoreBoard();
         scoreBoard.load();
+        Game newGame = new Game(scoreBoard);
         newGame.setDefaultCloseOperation( WindowConstants.EXIT_ON_CLOSE );
 
     }
@@ -76,7 +88,7 @@ public class Game extends JFrame implements MouseListener, ActionListener {
 
     // Helper function to create the Board for the Game, used inside Constructor
     private void initializedBoard() {
-        gameBoard = new Board(10,10, 10);
+        gameBoard = createBoard(Level.EASY);
         gameBoard.addMouseListener(this);
         gameMode = Level.EASY;
     }
@@ -84,7 +96,6 @@ public class Game extends JFrame implements MouseListener, ActionListener {
     // Helper function to create the rest of Game elements, used inside Constructor
     private void initializeGameElements() {
         statusBar = new StatusBar(this);
-        scoreBoard = new ScoreBoard();
         minesLeft = gameBoard.getMineCount();
         statusBar.updateMineLabel(minesLeft);
         container.add(gameBoard, BorderLayout.CENTER);
@@ -94,14 +105,14 @@ public class Game extends JFrame implements MouseListener, ActionListener {
     // Erases the old Board, resets all necessary elements and creates a new Board
     // based on the level of difficulty
     private void newGame(Level lv) {
-        StatusBar.stopTimer();
+        statusBar.stopTimer();
         statusBar.resetTimerLabel();
         statusBar.resetMineLabel(lv.mines);
         minesLeft = lv.mines;
         switch (lv) {
             case EASY:
                 container.remove(gameBoard);
-                gameBoard = new Board(10,10,MINES_EASY);
+                gameBoard = createBoard(lv);
                 gameMode = lv;
                 container.add(gameBoard, BorderLayout.CENTER);
                 setSize(450, 500);
@@ -109,7 +120,7 @@ public class Game extends JFrame implements MouseListener, ActionListener {
                 break;
             case MEDIUM:
                 container.remove(gameBoard);
-                gameBoard = new Board(15,15,MINES_MEDIUM);
+                gameBoard = createBoard(lv);
                 gameMode = lv;
                 container.add(gameBoard, BorderLayout.CENTER);
                 setSize(670, 709);
@@ -117,7 +128,7 @@ public class Game extends JFrame implements MouseListener, ActionListener {
                 break;
             case HARD:
                 container.remove(gameBoard);
-                gameBoard = new Board(15, 20, MINES_HARD);
+                gameBoard = createBoard(lv);
                 gameMode = lv;
                 container.add(gameBoard, BorderLayout.CENTER);
                 setSize(850, 709);
@@ -126,19 +137,40 @@ public class Game extends JFrame implements MouseListener, ActionListener {
         }
     }
 
-    // Checks to see if the Win condition has been met. If yes, it opens the rest of
-    // the needed Tiles and notifies scoreBoard object to get the User's info
-    public static void checkForWin() {
-        if(gameBoard.getTilesOpened() == WIN_CONDITION) {
-            statusBar.getTimer().stop();
-            gameBoard.showBoard();
-            scoreBoard.passWinnerScore(statusBar.getTimerInt());
-        }
+    // Creates a Board for a Level from a board made ahead of time, one that
+    // never needs a guess if No Guessing is checked
+    private Board createBoard(Level lv) {
+        if(toolbar.noGuess.isSelected())
+            return new Board(noGuessPools.get(lv).take(), this);
+        return new Board(pools.get(lv).take(), this);
+    }
+
+    // Shows the time on the clock of the Board as it runs
+    public void clockStarted(GameClock clock) {
+        statusBar.startTimer(clock);
     }
 
     // Updates the Mine label in the statusBar that reports # of Mines left
-    protected static void updateMinesLeft(int n) {
-        statusBar.updateMineLabel(minesLeft+=n);
+    public void minesLeftChanged(int change) {
+        statusBar.updateMineLabel(minesLeft+=change);
+    }
+
+    // Saves the replay of the game that just ended and, if the User won,
+    // notifies scoreBoard object to get the User's info. The dialogs are
+    // shown after the last click is done, so they do not hold it up
+    public void gameOver(boolean won) {
+        statusBar.stopTimer();
+        Level level = gameMode;
+        byte[] replay = gameBoard.getReplay();
+        scoreBoard.saveReplay(level, replay);
+        if(won) {
+            int millis = (int)gameBoard.getClock().getMillis();
+            SwingUtilities.invokeLater(() -> scoreBoard.passWinnerScore(level, millis, replay));
+        }
+        else {
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "You hit a mine!",
+                    "Game Over", JOptionPane.PLAIN_MESSAGE));
+        }
     }
 
     // Returns # of Mines left to mark
@@ -162,7 +194,7 @@ public class Game extends JFrame implements MouseListener, ActionListener {
             newGame(Level.HARD);
         }
         else if(event.getSource() == toolbar.scoreItem) {
-            scoreBoard.showScore();
+            scoreBoard.showScore(gameMode);
         }
         else if(event.getSource() == toolbar.help) {
             String message = "Step 1: Select a difficulty level.\n" +
@@ -191,6 +223,7 @@ public class Game extends JFrame implements MouseListener, ActionListener {
             JOptionPane.showMessageDialog(null, message, "About", JOptionPane.PLAIN_MESSAGE);
         }
         else if(event.getSource() == toolbar.exit) {
+            scoreBoard.flush();
             System.exit(0);
         }
     }
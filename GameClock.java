@@ -0,0 +1,53 @@
+/**
+ *  This class deals with timing a single game. The clock starts when the
+ *  player opens the first cell and stops at the cell that wins or loses
+ *  the game. Both times are read from System.nanoTime, which only moves
+ *  forward and is not changed by setting the system clock. The clock does
+ *  not depend on how often the time is shown, so a busy screen can not
+ *  change a score.
+ */
+public final class GameClock {
+
+    private long start;                             // System.nanoTime the game started
+    private long stop;                              // System.nanoTime the game ended
+    private boolean started;                        // True once the first cell was opened
+    private boolean stopped;                        // True once the game was won or lost
+
+    // Starts the clock, if it was not started before
+    protected void start(long now) {
+        if(started)
+            return;
+        start = now;
+        started = true;
+    }
+
+    // Stops the clock, if it is running
+    protected void stop(long now) {
+        if(!started || stopped)
+            return;
+        stop = now;
+        stopped = true;
+    }
+
+    // Returns true once the clock was started
+    protected boolean isStarted() {
+        return started;
+    }
+
+    // Returns true while the clock is started and not stopped
+    protected boolean isRunning() {
+        return started && !stopped;
+    }
+
+    // Returns the time the game took so far, or in total once it ended
+    protected long getNanos() {
+        if(!started)
+            return 0;
+        return (stopped ? stop : System.nanoTime()) - start;
+    }
+
+    // Returns the time the game took in whole milliseconds
+    protected long getMillis() {
+        return getNanos() / 1000000;
+    }
+}
\ No newline at end of file
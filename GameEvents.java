@@ -0,0 +1,20 @@
+/**
+ *  This interface is used by a Board to tell the game it belongs to what
+ *  happened on it. Every Board is given it's own, so a window, a test or
+ *  any other owner of a Board hears only about that Board, and many games
+ *  can run in one program without sharing any state. All methods are
+ *  called on the thread handling the Board's mouse events.
+ */
+public interface GameEvents {
+
+    // Called when the first cell is opened and the clock starts
+    void clockStarted(GameClock clock);
+
+    // Called when a Flag is put on (-1) or taken off (+1) a cell, with the
+    // change in the # of Mines left to mark
+    void minesLeftChanged(int change);
+
+    // Called once when the game is won or lost, after the clock stopped and
+    // the whole board was shown
+    void gameOver(boolean won);
+}
\ No newline at end of file
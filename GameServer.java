@@ -0,0 +1,460 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.SplittableRandom;
+
+/**
+ *  This class deals with hosting many games over the network at once.
+ *  Every connection is a session that plays one game at a time with the
+ *  same rules as the Swing game, kept in a headless BoardModel. All
+ *  sessions are served by a single thread waiting on a non-blocking
+ *  selector, so a session only costs it's board, a small line buffer and
+ *  a socket. Responses are built in one shared buffer and only a response
+ *  that does not fit in the socket is copied into the session. Sessions
+ *  that send nothing for a while are closed.
+ *
+ *  The protocol is one line per command and one line per response:
+ *      NEW rows cols mines [seed]  ->  GAME rows cols mines
+ *      OPEN row col                ->  OK PLAY|WON|LOST count {row col symbol}
+ *      CHORD row col               ->  OK PLAY|WON|LOST count {row col symbol}
+ *      MARK row col                ->  MARK row col mark
+ *      QUIT                        ->  (connection closed)
+ *  A symbol is the # of adjacent Mines, 9 for a Mine. A mark is 0 for
+ *  none, 1 for a Flag and 2 for a Question. The seed is never sent, it
+ *  would tell the client where every Mine is. Anything wrong, like a
+ *  move after the game is over, is answered with ERR and a reason.
+ *
+ *  Usage: java GameServer [--port p] [--idle seconds] [--max-sessions n]
+ */
+public final class GameServer {
+
+    protected static final int MAX_CELLS = 1 << 16;         // Largest board a session may ask for
+    private static final int LINE_BYTES = 64;               // Longest command
+    private static final int CELL_BYTES = 14;               // Longest "row col symbol " in a response
+    private static final int BACKLOG = 4096;                // Connections waiting to be accepted
+    private static final long SELECT_MILLIS = 1000;         // Longest wait between idle checks
+    private static final long ACCEPT_PAUSE = 100000000L;    // Nanoseconds accepting stops after it failed
+
+    private static final byte[] GAME = "GAME ".getBytes();
+    private static final byte[] OK = "OK ".getBytes();
+    private static final byte[] MARKED = "MARK ".getBytes();
+    private static final byte[] ERR = "ERR ".getBytes();
+    private static final byte[][] STATES = { "PLAY ".getBytes(), "WON ".getBytes(), "LOST ".getBytes() };
+
+    private final Selector selector;                // Waits for every socket at once
+    private final ServerSocketChannel server;       // Socket new sessions connect to
+    private final long idleNanos;                   // Time a session may send nothing
+    private final int maxSessions;                  // # of sessions allowed at once
+    private final LinkedHashMap<SocketChannel,Session> sessions;   // Least recently used first
+    private final ByteBuffer out;                   // Response being written, shared by every session
+    private final int[] opened;                     // Opened cells buffer shared by every board
+    private final SplittableRandom random;          // Seeds of boards asked for without one
+    private final SelectionKey acceptKey;           // Selects the server socket for new connections
+    private long acceptPausedAt;                    // When accepting failed and was stopped, 0 if it was not
+
+    // CONSTRUCTOR
+    GameServer(int port, long idleSeconds, int maxSessions) throws IOException {
+        this.idleNanos = idleSeconds * 1000000000L;
+        this.maxSessions = maxSessions;
+        sessions = new LinkedHashMap<SocketChannel,Session>(1024, 0.75f, true);
+        out = ByteBuffer.allocateDirect(MAX_CELLS * CELL_BYTES + LINE_BYTES);
+        opened = new int[MAX_CELLS];
+        random = new SplittableRandom();
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), BACKLOG);
+        server.configureBlocking(false);
+        acceptKey = server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public static void main(String args[]) throws IOException {
+        Metrics.start();
+        int port = 7070;
+        long idle = 60;
+        int maxSessions = 100000;
+        for(int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--idle": idle = Long.parseLong(args[++i]); break;
+                case "--max-sessions": maxSessions = Integer.parseInt(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        GameServer gameServer = new GameServer(port, idle, maxSessions);
+        System.err.println("Listening on port " + gameServer.getPort());
+        gameServer.serve();
+    }
+
+    // Returns the port the server listens on
+    protected int getPort() throws IOException {
+        return ((InetSocketAddress)server.getLocalAddress()).getPort();
+    }
+
+    // Returns the # of sessions open
+    protected int getSessionCount() {
+        return sessions.size();
+    }
+
+    // Serves every session until the server is closed
+    protected void serve() throws IOException {
+        while(server.isOpen()) {
+            selector.select(acceptPausedAt != 0 ? ACCEPT_PAUSE / 1000000 : SELECT_MILLIS);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while(keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if(!key.isValid())
+                    continue;
+                if(key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                Session session = (Session)key.attachment();
+                try {
+                    if(key.isWritable())
+                        session.flush();
+                    if(key.isValid() && key.isReadable())
+                        session.read();
+                } catch (IOException e) {
+                    close(session);
+                } catch (RuntimeException e) {        // A bug in one session must not stop the others
+                    System.err.println("Error: " + e);
+                    session.fail();
+                }
+            }
+            evictIdle();
+            if(acceptPausedAt != 0 && System.nanoTime() - acceptPausedAt >= ACCEPT_PAUSE) {
+                acceptPausedAt = 0;
+                acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+            }
+        }
+        for(Session session : sessions.values())
+            closeChannel(session);
+        sessions.clear();
+        selector.close();
+    }
+
+    // Stops serve(), which then closes every session. Can be called from any thread
+    protected void close() throws IOException {
+        server.close();
+        selector.wakeup();
+    }
+
+    // Accepts every connection waiting, turning away those over the limit.
+    // A connection that fails while being set up is closed on it's own, the
+    // other sessions go on. If accepting itself fails, like when the process
+    // is out of file descriptors, it stops for ACCEPT_PAUSE instead of
+    // failing again on every select
+    private void accept() {
+        while(true) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+                acceptKey.interestOps(0);
+                acceptPausedAt = System.nanoTime() | 1;
+                return;
+            }
+            if(channel == null)
+                return;
+            try {
+                if(sessions.size() >= maxSessions) {
+                    channel.close();
+                    continue;
+                }
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Session session = new Session(channel);
+                session.key = channel.register(selector, SelectionKey.OP_READ, session);
+                sessions.put(channel, session);
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException closing) {
+                    System.err.println("Error: " + closing.getMessage());
+                }
+            }
+        }
+    }
+
+    // Closes the sessions that sent nothing for too long, the least recently
+    // used come first so it stops at the first one still in use
+    private void evictIdle() {
+        long now = System.nanoTime();
+        Iterator<Session> it = sessions.values().iterator();
+        while(it.hasNext()) {
+            Session session = it.next();
+            if(now - session.lastActive < idleNanos)
+                break;
+            it.remove();
+            closeChannel(session);
+        }
+    }
+
+    // Closes a session and forgets it
+    private void close(Session session) {
+        sessions.remove(session.channel);
+        closeChannel(session);
+    }
+
+    // Closes the socket of a session
+    private void closeChannel(Session session) {
+        session.key.cancel();
+        try {
+            session.channel.close();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    // Writes a number as ASCII digits
+    private static void putNumber(ByteBuffer buffer, long value) {
+        if(value < 0) {
+            buffer.put((byte)'-');
+            if(value == Long.MIN_VALUE) {
+                buffer.put("9223372036854775808".getBytes());
+                return;
+            }
+            value = -value;
+        }
+        long digits = 1;
+        while(digits <= value / 10)
+            digits *= 10;
+        for(; digits > 0; digits /= 10)
+            buffer.put((byte)('0' + value / digits % 10));
+    }
+
+    /**
+     *  A single connection and the game it is playing. Commands are read
+     *  into a small buffer and handled one line at a time. While a response
+     *  is still waiting for the socket no more commands are read, so a
+     *  client that does not read can not make the server hold more for it.
+     */
+    private final class Session {
+
+        private final SocketChannel channel;
+        private final ByteBuffer in;                // Bytes read that are not handled yet
+        private final long[] args;                  // Numbers of the command being handled
+        private SelectionKey key;
+        private ByteBuffer pending;                 // Response the socket did not take yet
+        private BoardModel model;                   // Game being played, null before NEW
+        private long lastActive;                    // System.nanoTime of the last command
+
+        // CONSTRUCTOR
+        Session(SocketChannel channel) {
+            this.channel = channel;
+            in = ByteBuffer.allocate(LINE_BYTES);
+            args = new long[4];
+            lastActive = System.nanoTime();
+        }
+
+        // Reads what the client sent and handles every full line
+        private void read() throws IOException {
+            if(channel.read(in) < 0) {
+                close(this);
+                return;
+            }
+            lastActive = System.nanoTime();
+            sessions.get(channel);                  // Moves it to the back of the idle order
+            handleLines();
+        }
+
+        // Handles full lines in the buffer until a response has to wait
+        private void handleLines() throws IOException {
+            in.flip();
+            byte[] bytes = in.array();
+            int start = in.position();
+            for(int i = start; i < in.limit() && pending == null && channel.isOpen(); i++) {
+                if(bytes[i] == '\n') {
+                    handle(bytes, start, i);
+                    start = i + 1;
+                }
+            }
+            in.position(start);
+            in.compact();
+            if(pending == null && channel.isOpen() && !in.hasRemaining()) {
+                reply(error("line too long"));
+                close(this);
+            }
+        }
+
+        // Writes what is left of a response, and goes back to reading once it is all sent
+        private void flush() throws IOException {
+            channel.write(pending);
+            if(pending.hasRemaining())
+                return;
+            pending = null;
+            key.interestOps(SelectionKey.OP_READ);
+            handleLines();
+        }
+
+        // Handles the command in bytes [from, to)
+        private void handle(byte[] bytes, int from, int to) throws IOException {
+            if(to > from && bytes[to - 1] == '\r')
+                to--;
+            int end = from;
+            while(end < to && bytes[end] != ' ')
+                end++;
+            int count = parseArgs(bytes, end, to);
+            if(count < 0)
+                reply(error("bad number"));
+            else if(is(bytes, from, end, "NEW"))
+                newGame(count);
+            else if(is(bytes, from, end, "QUIT"))
+                close(this);
+            else if(!is(bytes, from, end, "OPEN") && !is(bytes, from, end, "CHORD") && !is(bytes, from, end, "MARK"))
+                reply(error("unknown command"));
+            else if(model == null)
+                reply(error("no game, send NEW"));
+            else if(model.isLost() || model.isWon())
+                reply(error("game over, send NEW"));
+            else if(count != 2 || args[0] < 0 || args[0] >= model.getRows() || args[1] < 0 || args[1] >= model.getCols())
+                reply(error("bad cell"));
+            else if(is(bytes, from, end, "OPEN"))
+                opened(model.click(model.index((int)args[0], (int)args[1])));
+            else if(is(bytes, from, end, "CHORD"))
+                opened(model.chord(model.index((int)args[0], (int)args[1])));
+            else
+                mark(model.index((int)args[0], (int)args[1]));
+        }
+
+        // Starts a new game
+        private void newGame(int count) throws IOException {
+            if(count < 3 || count > 4) {
+                reply(error("NEW rows cols mines [seed]"));
+                return;
+            }
+            long rows = args[0], cols = args[1], mines = args[2];
+            if(rows < 1 || cols < 1 || rows > MAX_CELLS || cols > MAX_CELLS || rows * cols > MAX_CELLS
+                    || mines < 0 || mines >= rows * cols) {
+                reply(error("bad board"));
+                return;
+            }
+            long seed = count == 4 ? args[3] : random.nextLong();
+            model = new BoardModel((int)rows, (int)cols, (int)mines, seed);
+            model.shareOpened(opened);
+            out.clear();
+            out.put(GAME);
+            putNumber(out, rows);
+            out.put((byte)' ');
+            putNumber(out, cols);
+            out.put((byte)' ');
+            putNumber(out, mines);
+            out.put((byte)'\n');
+            reply(out);
+        }
+
+        // Replies with the state of the game and the cells just opened
+        private void opened(int count) throws IOException {
+            int[] cells = model.getOpened();
+            out.clear();
+            out.put(OK);
+            out.put(STATES[model.isLost() ? 2 : model.isWon() ? 1 : 0]);
+            putNumber(out, count);
+            for(int i = 0; i < count; i++) {
+                int cell = cells[i];
+                out.put((byte)' ');
+                putNumber(out, model.rowOf(cell));
+                out.put((byte)' ');
+                putNumber(out, model.colOf(cell));
+                out.put((byte)' ');
+                out.put((byte)('0' + model.getSymbol(cell)));
+            }
+            out.put((byte)'\n');
+            reply(out);
+        }
+
+        // Changes the mark of a hidden cell and replies with the new mark
+        private void mark(int cell) throws IOException {
+            if(!model.isHidden(cell)) {
+                reply(error("cell is open"));
+                return;
+            }
+            int mark = model.cycleMark(cell);
+            out.clear();
+            out.put(MARKED);
+            putNumber(out, model.rowOf(cell));
+            out.put((byte)' ');
+            putNumber(out, model.colOf(cell));
+            out.put((byte)' ');
+            putNumber(out, mark);
+            out.put((byte)'\n');
+            reply(out);
+        }
+
+        // Tells the client the server failed and closes the session
+        private void fail() {
+            try {
+                reply(error("server error"));
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+            }
+            close(this);
+        }
+
+        // Puts an error in the shared buffer
+        private ByteBuffer error(String reason) {
+            out.clear();
+            out.put(ERR);
+            out.put(reason.getBytes());
+            out.put((byte)'\n');
+            return out;
+        }
+
+        // Sends a response, keeping what the socket did not take until it is writable
+        private void reply(ByteBuffer response) throws IOException {
+            response.flip();
+            channel.write(response);
+            if(!response.hasRemaining())
+                return;
+            pending = ByteBuffer.allocate(response.remaining());
+            pending.put(response).flip();
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+
+        // Reads the numbers after the command in bytes [from, to), returns how
+        // many there are or -1 if one is not a number
+        private int parseArgs(byte[] bytes, int from, int to) {
+            int count = 0;
+            int i = from;
+            while(i < to) {
+                if(bytes[i] == ' ') {
+                    i++;
+                    continue;
+                }
+                if(count == args.length)
+                    return -1;
+                boolean negative = bytes[i] == '-';
+                if(negative)
+                    i++;
+                int digits = 0;
+                long value = 0;
+                while(i < to && bytes[i] >= '0' && bytes[i] <= '9' && digits < 19) {
+                    value = value * 10 + (bytes[i++] - '0');
+                    digits++;
+                }
+                if(digits == 0 || (i < to && bytes[i] != ' '))
+                    return -1;
+                args[count++] = negative ? -value : value;
+            }
+            return count;
+        }
+
+        // Returns true if bytes [from, to) spell a word
+        private boolean is(byte[] bytes, int from, int to, String word) {
+            if(to - from != word.length())
+                return false;
+            for(int i = 0; i < word.length(); i++) {
+                if(bytes[from + i] != word.charAt(i))
+                    return false;
+            }
+            return true;
+        }
+    }
+}
\ No newline at end of file
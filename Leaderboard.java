@@ -0,0 +1,219 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  This class deals with the scores of a single difficulty Level. Every
+ *  score ever made is counted in a Fenwick tree indexed by score, which
+ *  answers how many scores beat a given score in O(log n) without keeping
+ *  the scores themselves. The best scores are also kept with their names
+ *  in a sorted list, players with the same score are all kept and ranked
+ *  by who made it first. The tree stops growing at MAX_SIZE values, slower
+ *  scores are all counted in it's last value and rank as tied with each
+ *  other, so a score file with huge values can not use much memory. New
+ *  scores are appended to the end of the file instead of writing the whole
+ *  file again, the writing itself is done by a ScoreWriter on it's own
+ *  thread. The scores can be read and changed from any thread.
+ */
+public class Leaderboard {
+
+    private static final int INITIAL_SIZE = 1024;   // First # of score values the tree can hold
+    private static final int MAX_SIZE = 1 << 22;    // Most score values the tree holds, over an hour in ms
+
+    private final File file;                        // File the scores are appended to
+    private final ScoreWriter writer;               // Used to write the file in the background
+    private final int keep;                         // # of best scores kept with their names
+    private final ArrayList<Entry> best;            // Best scores, lowest first
+    private int[] tree;                             // Fenwick tree of # of scores by value
+    private int size;                               // # of score values the tree can hold
+    private int total;                              // # of scores ever made
+
+    // CONSTRUCTOR
+    Leaderboard(File file, int keep, ScoreWriter writer) {
+        this.file = file;
+        this.writer = writer;
+        this.keep = keep;
+        best = new ArrayList<Entry>(keep + 1);
+        clearScores();
+    }
+
+    // Adds every score from the file to the scores already in memory, lines
+    // have the form "name score". Lines that can not be read are skipped, and
+    // a last line cut short by a crash is removed from the file. Should run on
+    // the writer thread, so that scores recorded while loading are not in the
+    // file yet and are not added twice, and no append can come before the cut
+    protected void load() {
+        if(!file.exists())
+            return;
+        try {
+            dropPartialLine();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String strLine;
+            while((strLine = reader.readLine()) != null) {
+                int split = strLine.lastIndexOf(' ');
+                if(split < 0)
+                    continue;
+                try {
+                    add(strLine.substring(0, split), Integer.parseInt(strLine.substring(split + 1).trim()));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Skipping score line: " + strLine);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    // Cuts off a last line that does not end in a newline. It is what is left
+    // of a write that never finished, so it's score can not be trusted, and
+    // the next score appended would be glued onto it
+    private void dropPartialLine() throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long keep = size;
+            ByteBuffer last = ByteBuffer.allocate(1);
+            while(keep > 0) {
+                last.clear();
+                channel.read(last, keep - 1);
+                if(last.get(0) == '\n')
+                    break;
+                keep--;
+            }
+            if(keep < size) {
+                System.err.println("Skipping score line cut short in " + file);
+                channel.truncate(keep);
+            }
+        }
+    }
+
+    // Writes the scores of an older file to this board's file, each multiplied
+    // by scale, if this board has no file yet. Lines that can not be read are
+    // skipped. Should run on the writer thread before load()
+    protected void migrate(File old, int scale) {
+        if(file.exists() || !old.exists())
+            return;
+        try (BufferedReader reader = new BufferedReader(new FileReader(old));
+             BufferedWriter out = new BufferedWriter(new FileWriter(file))) {
+            String strLine;
+            while((strLine = reader.readLine()) != null) {
+                int split = strLine.lastIndexOf(' ');
+                if(split < 0)
+                    continue;
+                try {
+                    long score = Long.parseLong(strLine.substring(split + 1).trim()) * scale;
+                    if(score < 0 || score > Integer.MAX_VALUE)
+                        continue;
+                    out.write(strLine.substring(0, split) + " " + score);
+                    out.newLine();
+                } catch (NumberFormatException e) {
+                    System.err.println("Skipping score line: " + strLine);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    // Adds a score and appends it to the end of the file in the background
+    protected void record(String name, int score) {
+        add(name, score);
+        writer.append(file, name + " " + score);
+    }
+
+    // Adds a score to the tree and, if it is good enough, to the best scores
+    protected synchronized void add(String name, int score) {
+        if(score < 0)
+            throw new IllegalArgumentException("Negative score " + score);
+        int value = Math.min(score, MAX_SIZE - 1);
+        while(value >= size)
+            grow();
+        for(int i = value + 1; i <= size; i += i & -i)
+            tree[i]++;
+        total++;
+
+        if(best.size() == keep && score >= best.get(keep - 1).score)
+            return;
+        // Insert after all scores that are lower or equal, so ties keep their order
+        int low = 0, high = best.size();
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(best.get(middle).score <= score)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        best.add(low, new Entry(name, score));
+        if(best.size() > keep)
+            best.remove(keep);
+    }
+
+    // Doubles the # of score values the tree can hold. With a size that is a
+    // power of two the old nodes stay valid, the new nodes cover only values
+    // nobody has scored yet except the last one, which covers everything
+    private void grow() {
+        int[] bigger = new int[2*size + 1];
+        System.arraycopy(tree, 0, bigger, 0, tree.length);
+        size *= 2;
+        bigger[size] = total;
+        tree = bigger;
+    }
+
+    // Returns the # of scores lower than a score
+    protected synchronized int countBelow(int score) {
+        int count = 0;
+        for(int i = Math.min(Math.min(score, MAX_SIZE - 1), size); i > 0; i -= i & -i)
+            count += tree[i];
+        return count;
+    }
+
+    // Returns the place a new score would get, 1 for the best
+    protected int rankOf(int score) {
+        return countBelow(score) + 1;
+    }
+
+    // Returns the # of scores ever made
+    protected synchronized int getTotal() {
+        return total;
+    }
+
+    // Returns up to n of the best scores, lowest first
+    protected synchronized List<Entry> top(int n) {
+        return new ArrayList<Entry>(best.subList(0, Math.min(n, best.size())));
+    }
+
+    // Empties the file in the background and forgets every score
+    protected void reset() {
+        clearScores();
+        writer.reset(file);
+    }
+
+    // Forgets every score kept in memory
+    private synchronized void clearScores() {
+        size = INITIAL_SIZE;
+        tree = new int[size + 1];
+        total = 0;
+        best.clear();
+    }
+
+    /**
+     *  A name and the score it made.
+     */
+    protected static final class Entry {
+
+        protected final String name;
+        protected final int score;
+
+        // CONSTRUCTOR
+        Entry(String name, int score) {
+            this.name = name;
+            this.score = score;
+        }
+    }
+}
\ No newline at end of file
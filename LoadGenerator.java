@@ -0,0 +1,298 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ *  This class deals with putting a GameServer under load. It opens many
+ *  connections from a single thread on a non-blocking selector, and every
+ *  connection plays games: it asks for a new game, opens a random hidden
+ *  cell a think time after the answer to the last one arrives, and starts
+ *  over once the game is won or lost. With no think time every connection
+ *  keeps the server as busy as it can, which measures how many moves it
+ *  can serve but mostly measures queueing as latency. A think time offers
+ *  a steady load below that, to measure latency. Connections are opened a few
+ *  at a time so the server's backlog does not overflow. After a warm up,
+ *  the time from sending a move to reading it's answer is measured, and
+ *  at the end the moves per second and the p50, p99 and p99.9 latency are
+ *  printed.
+ *
+ *  Usage: java LoadGenerator [--host h] [--port p] [--clients n]
+ *                            [--seconds s] [--warmup s] [--think ms]
+ *                            [--rows r] [--cols c] [--mines m]
+ */
+public final class LoadGenerator {
+
+    private static final int MAX_CONNECTING = 256;          // Connections being opened at once
+    private static final int MAX_SAMPLES = 1 << 22;         // Most latencies kept
+    private static final int CELL_BYTES = 14;               // Longest "row col symbol " in a response
+
+    private final InetSocketAddress address;        // Where the server is
+    private final int clients;                      // # of connections to open
+    private final int rows;                         // # of Rows of every game
+    private final int cols;                         // # of Columns of every game
+    private final int mines;                        // # of Mines of every game
+    private final long thinkNanos;                  // Time a connection waits between moves
+    private final byte[] newGame;                   // Command that starts a game
+    private final PriorityQueue<Client> thinking;   // Connections waiting to move, first due first
+    private final SplittableRandom random;          // Picks the cells to open
+    private final long[] samples;                   // Latencies measured, in nanoseconds
+    private int sampled;                            // # of latencies in samples
+    private long moves;                             // # of answers measured
+    private long games;                             // # of games finished while measuring
+    private long wins;                              // # of games won while measuring
+    private long errors;                            // # of ERR answers and broken connections
+    private boolean measuring;                      // Used to skip the warm up
+
+    // CONSTRUCTOR
+    LoadGenerator(InetSocketAddress address, int clients, long thinkMillis, int rows, int cols, int mines) {
+        this.address = address;
+        thinkNanos = thinkMillis * 1000000L;
+        thinking = new PriorityQueue<Client>((a, b) -> Long.compare(a.due, b.due));
+        this.clients = clients;
+        this.rows = rows;
+        this.cols = cols;
+        this.mines = mines;
+        newGame = ("NEW " + rows + " " + cols + " " + mines + "\n").getBytes();
+        random = new SplittableRandom(1);
+        samples = new long[MAX_SAMPLES];
+    }
+
+    public static void main(String args[]) throws IOException {
+        String host = "localhost";
+        int port = 7070;
+        int clients = 10000;
+        long seconds = 30;
+        long warmup = 5;
+        long think = 0;
+        int rows = 16, cols = 30, mines = 99;
+        for(int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--host": host = args[++i]; break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--clients": clients = Integer.parseInt(args[++i]); break;
+                case "--seconds": seconds = Long.parseLong(args[++i]); break;
+                case "--warmup": warmup = Long.parseLong(args[++i]); break;
+                case "--think": think = Long.parseLong(args[++i]); break;
+                case "--rows": rows = Integer.parseInt(args[++i]); break;
+                case "--cols": cols = Integer.parseInt(args[++i]); break;
+                case "--mines": mines = Integer.parseInt(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        LoadGenerator load = new LoadGenerator(new InetSocketAddress(host, port), clients, think, rows, cols, mines);
+        System.out.println(load.run(warmup * 1000000000L, seconds * 1000000000L));
+    }
+
+    // Plays on every connection for the warm up and then the measured time,
+    // returns a summary of what was measured
+    protected String run(long warmupNanos, long measureNanos) throws IOException {
+        Selector selector = Selector.open();
+        int opened = 0;
+        int connecting = 0;
+        int connected = 0;
+        long start = System.nanoTime();
+        long measureStart = Long.MAX_VALUE;
+        long end = Long.MAX_VALUE;
+        try {
+            while(System.nanoTime() < end) {
+                while(opened < clients && connecting < MAX_CONNECTING) {
+                    SocketChannel channel = SocketChannel.open();
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    channel.connect(address);
+                    channel.register(selector, SelectionKey.OP_CONNECT, new Client(channel));
+                    opened++;
+                    connecting++;
+                }
+                long now = System.nanoTime();
+                if(!measuring && opened == clients && connecting == 0 && now - start >= warmupNanos) {
+                    measuring = true;
+                    measureStart = now;
+                    end = now + measureNanos;
+                }
+                while(!thinking.isEmpty() && thinking.peek().due <= now) {
+                    Client client = thinking.poll();
+                    try {
+                        client.openRandom();
+                    } catch (IOException e) {
+                        errors++;
+                        client.channel.close();
+                    }
+                }
+                long wait = thinking.isEmpty() ? 100 : (thinking.peek().due - now) / 1000000;
+                if(wait > 0)
+                    selector.select(Math.min(wait, 100));
+                else
+                    selector.selectNow();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Client client = (Client)key.attachment();
+                    boolean connect = key.isConnectable();
+                    try {
+                        if(connect) {
+                            connecting--;
+                            client.channel.finishConnect();
+                            connected++;
+                            key.interestOps(SelectionKey.OP_READ);
+                            client.send(newGame);
+                        }
+                        else if(key.isReadable())
+                            client.read();
+                    } catch (IOException e) {
+                        errors++;
+                        key.cancel();
+                        client.channel.close();
+                    }
+                }
+            }
+        } finally {
+            for(SelectionKey key : selector.keys())
+                key.channel().close();
+            selector.close();
+        }
+
+        long[] kept = Arrays.copyOf(samples, sampled);
+        Arrays.sort(kept);
+        double seconds = (System.nanoTime() - measureStart) / 1e9;
+        return String.format("clients %d, moves %d (%.0f/s), games %d, wins %d, errors %d, "
+                + "p50 %.1f us, p99 %.1f us, p99.9 %.1f us", connected, moves, moves / seconds, games, wins,
+                errors, percentile(kept, 0.5), percentile(kept, 0.99), percentile(kept, 0.999));
+    }
+
+    // Returns a percentile of sorted latencies in microseconds
+    private static double percentile(long[] sorted, double p) {
+        if(sorted.length == 0)
+            return 0;
+        return sorted[(int)Math.min(sorted.length - 1, (long)Math.ceil(sorted.length * p) - 1)] / 1e3;
+    }
+
+    /**
+     *  A single connection playing one game at a time. It remembers which
+     *  cells it has seen opened, so it only ever opens hidden ones.
+     */
+    private final class Client {
+
+        private final SocketChannel channel;
+        private final byte[] open;                  // 1 for each cell seen opened
+        private final ByteBuffer command;           // Command being sent
+        private ByteBuffer in;                      // Answer being read
+        private int hidden;                         // # of cells not seen opened
+        private long sent;                          // System.nanoTime the last command was sent
+        private long due;                           // System.nanoTime to make the next move
+
+        // CONSTRUCTOR
+        Client(SocketChannel channel) {
+            this.channel = channel;
+            open = new byte[rows * cols];
+            command = ByteBuffer.allocate(32);
+            in = ByteBuffer.allocate(256);
+        }
+
+        // Sends a command, which is always small enough for the socket
+        private void send(byte[] bytes) throws IOException {
+            command.clear();
+            command.put(bytes).flip();
+            sent = System.nanoTime();
+            channel.write(command);
+            if(command.hasRemaining())
+                throw new IOException("Command cut short");
+        }
+
+        // Reads the answer so far and handles it once the whole line is in
+        private void read() throws IOException {
+            if(!in.hasRemaining())                  // Opening a large area gives a long answer
+                in = ByteBuffer.allocate(Math.max(in.capacity() * 2, 64 + open.length * CELL_BYTES))
+                        .put(in.flip());
+            if(channel.read(in) < 0)
+                throw new IOException("Closed by server");
+            byte[] bytes = in.array();
+            int length = in.position();
+            if(length == 0 || bytes[length - 1] != '\n')
+                return;
+            long latency = System.nanoTime() - sent;
+            if(measuring) {
+                moves++;
+                if(sampled < samples.length)
+                    samples[sampled++] = latency;
+            }
+            in.clear();
+            answer(bytes, length);
+        }
+
+        // Acts on a full answer in bytes [0, length)
+        private void answer(byte[] bytes, int length) throws IOException {
+            if(bytes[0] == 'G') {                   // GAME: a fresh board
+                Arrays.fill(open, (byte)0);
+                hidden = open.length;
+                think();
+                return;
+            }
+            if(bytes[0] != 'O') {                   // ERR
+                errors++;
+                send(newGame);
+                return;
+            }
+            int[] position = { 3 };                 // Past "OK "
+            byte state = bytes[3];
+            while(bytes[position[0]++] != ' ');
+            int count = next(bytes, position);
+            for(int i = 0; i < count; i++) {
+                int row = next(bytes, position);
+                int col = next(bytes, position);
+                next(bytes, position);
+                if(open[row * cols + col] == 0) {
+                    open[row * cols + col] = 1;
+                    hidden--;
+                }
+            }
+            if(state == 'P' && hidden > mines) {
+                think();
+                return;
+            }
+            if(measuring) {
+                games++;
+                if(state == 'W')
+                    wins++;
+            }
+            send(newGame);
+        }
+
+        // Waits about the think time before the next move. The time is spread
+        // between half and one and a half times it, so connections that
+        // started together do not keep moving in bursts
+        private void think() throws IOException {
+            if(thinkNanos == 0) {
+                openRandom();
+                return;
+            }
+            due = System.nanoTime() + thinkNanos / 2 + random.nextLong(thinkNanos);
+            thinking.add(this);
+        }
+
+        // Opens a random cell not seen opened yet
+        private void openRandom() throws IOException {
+            int cell = random.nextInt(open.length);
+            while(open[cell] != 0)
+                cell = cell + 1 == open.length ? 0 : cell + 1;
+            send(("OPEN " + cell / cols + " " + cell % cols + "\n").getBytes());
+        }
+
+        // Reads the number starting at position[0] and moves past it
+        private int next(byte[] bytes, int[] position) {
+            int i = position[0];
+            int value = 0;
+            while(bytes[i] >= '0' && bytes[i] <= '9')
+                value = value * 10 + (bytes[i++] - '0');
+            position[0] = i + 1;
+            return value;
+        }
+    }
+}
\ No newline at end of file
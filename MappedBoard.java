@@ -0,0 +1,518 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ *  This class deals with boards too big to keep on the heap, tens of
+ *  thousands of cells on a side. The state a player changes is kept in a
+ *  memory-mapped file, 4 bits a cell: one bit tells if the cell is opened
+ *  and two hold the right click mark. Cells are stored in tiles of 64 rows
+ *  by 128 columns, each exactly one 4096 byte page, so playing one area
+ *  of the board only touches the pages of that area. The Mines are not
+ *  stored at all: a cell is a Mine if a hash of it's position and the
+ *  seed falls below a threshold set by the density, and the # of adjacent
+ *  Mines is counted from the hashes when it is needed. So making a board
+ *  writes nothing, the file is sparse and parts of the board nobody plays
+ *  are never read from disk or kept in memory. The heap holds only a few
+ *  objects whatever the size, so the garbage collector never sees the
+ *  board. The opened count is kept in the file too, so a board can be
+ *  opened again and played on.
+ *
+ *  One thread plays the board. Any number of other threads can read it
+ *  at the same time, like spectators being sent the board. A reader that
+ *  reads getVersion() first sees every move finished before that version.
+ *  Only square neighbors are supported.
+ */
+public final class MappedBoard implements AutoCloseable {
+
+    protected static final int MINE = 9;            // Symbol used to represent a Mine
+    protected static final int NO_MARK = 0;         // Cell has not been right clicked
+    protected static final int FLAG = 1;            // Cell has been marked with a Flag
+    protected static final int QUESTION = 2;        // Cell has been marked with a Question
+
+    private static final int MAX_SIDE = 1 << 20;    // Most Rows or Columns
+    private static final int TILE_ROWS = 64;        // Rows of a tile
+    private static final int TILE_COLS = 128;       // Columns of a tile
+    private static final int TILE_BYTES = TILE_ROWS * TILE_COLS / 2;
+    private static final int CHUNK_SHIFT = 30;      // Files are mapped 1 GB at a time
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+    private static final int MIN_TASK_ROWS = 256;   // Rows counted by one task
+    private static final int MAX_STACK = 1 << 16;   // Runs waiting to spread kept on the heap
+    private static final long MIN_UNCOUNTED = 1 << 20;  // Smaller boards always wait for the Mine count
+    private static final double MAX_UNCOUNTED = 0.45;   // Denser boards always wait for the Mine count
+
+    // Bit layout of a cell
+    private static final int OPENED = 0x1;
+    private static final int MARK_SHIFT = 1;
+    private static final int MARK_MASK = 0x6;
+    private static final int PENDING = 0x8;         // Waits to spread, only while a click opens cells
+
+    // Layout of the header page
+    private static final int HEADER_BYTES = 4096;
+    private static final int MAGIC = 0x4D534231;    // "MSB1"
+    private static final int AT_MAGIC = 0;
+    private static final int AT_ROWS = 4;
+    private static final int AT_COLS = 8;
+    private static final int AT_THRESHOLD = 16;
+    private static final int AT_SEED = 24;
+    private static final int AT_OPENED = 32;
+    private static final int AT_LOST = 40;
+
+    private final FileChannel channel;              // File the cells live in
+    private final MappedByteBuffer header;          // First page of the file
+    private final AtomicReferenceArray<MappedByteBuffer> chunks;    // Parts of the file mapped so far
+    private final long fileSize;                    // Bytes in the file
+    private final int rows;                         // # of Rows
+    private final int cols;                         // # of Columns
+    private final int tilesPerRow;                  // # of tiles across the board
+    private final long threshold;                   // Hashes below this, unsigned, are Mines
+    private final long seed;                        // Seed the Mines are hashed with
+    private final ForkJoinTask<Long> mineCount;     // Counts the Mines in the background
+    private final int[] changed;                    // Area opened by the last move
+    private final int[] pendingArea;                // Area of the cells marked PENDING
+    private long[] stack;                           // Runs of zeros waiting to spread, row and column packed
+    private long pending;                           // # of cells marked PENDING
+    private long tilesOpened;                       // Used to keep track of cells opened
+    private boolean lost;                           // True once a Mine has been clicked
+    private volatile long version;                  // # of moves finished
+
+    // CONSTRUCTOR
+    private MappedBoard(FileChannel channel, int rows, int cols, long threshold, long seed) throws IOException {
+        this.channel = channel;
+        this.rows = rows;
+        this.cols = cols;
+        this.threshold = threshold;
+        this.seed = seed;
+        tilesPerRow = (cols + TILE_COLS - 1) / TILE_COLS;
+        fileSize = sizeOf(rows, cols);
+        if(channel.size() < fileSize)               // Grows the file without writing, it stays sparse
+            channel.write(ByteBuffer.allocate(1), fileSize - 1);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        chunks = new AtomicReferenceArray<MappedByteBuffer>((int)((fileSize - 1 >>> CHUNK_SHIFT) + 1));
+        mineCount = ForkJoinPool.commonPool().submit(new CountTask(0, rows));
+        changed = new int[4];
+        stack = new long[1024];
+        pendingArea = new int[4];
+        clearPending();
+    }
+
+    // Makes a new board in a file, replacing anything in it. About density of
+    // the cells are Mines, which ones depends only on the seed
+    public static MappedBoard create(Path file, int rows, int cols, double density, long seed) throws IOException {
+        if(rows <= 0 || cols <= 0 || rows > MAX_SIDE || cols > MAX_SIDE || !(density >= 0 && density < 1))
+            throw new IllegalArgumentException("Invalid board " + rows + "x" + cols + " with density " + density);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.SPARSE);
+        long threshold = (long)(density * 0x1p63) << 1;
+        MappedBoard board = new MappedBoard(channel, rows, cols, threshold, seed);
+        board.header.putInt(AT_MAGIC, MAGIC).putInt(AT_ROWS, rows).putInt(AT_COLS, cols)
+                .putLong(AT_THRESHOLD, threshold).putLong(AT_SEED, seed);
+        return board;
+    }
+
+    // Opens a board made by create() to play on where it was left
+    public static MappedBoard open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer head = ByteBuffer.allocate(AT_LOST + 1);
+            while(head.hasRemaining() && channel.read(head, head.position()) >= 0);
+            int rows = head.getInt(AT_ROWS);
+            int cols = head.getInt(AT_COLS);
+            if(head.hasRemaining() || head.getInt(AT_MAGIC) != MAGIC || rows <= 0 || cols <= 0
+                    || rows > MAX_SIDE || cols > MAX_SIDE)
+                throw new IOException("Not a board file: " + file);
+            if(channel.size() < sizeOf(rows, cols))
+                throw new IOException("Board file cut short: " + file);
+            MappedBoard board = new MappedBoard(channel, rows, cols, head.getLong(AT_THRESHOLD), head.getLong(AT_SEED));
+            board.tilesOpened = head.getLong(AT_OPENED);
+            board.lost = head.get(AT_LOST) != 0;
+            return board;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Returns the # of bytes in the file of a board
+    private static long sizeOf(int rows, int cols) {
+        long tiles = (long)((rows + TILE_ROWS - 1) / TILE_ROWS) * ((cols + TILE_COLS - 1) / TILE_COLS);
+        return HEADER_BYTES + tiles * TILE_BYTES;
+    }
+
+    // Writes every change to disk and closes the file
+    public void close() throws IOException {
+        header.force();
+        for(int i = 0; i < chunks.length(); i++) {
+            if(chunks.get(i) != null)
+                chunks.get(i).force();
+        }
+        channel.close();
+    }
+
+    // Returns the # of Rows
+    protected int getRows() {
+        return rows;
+    }
+
+    // Returns the # of Columns
+    protected int getCols() {
+        return cols;
+    }
+
+    // Returns the # of Mines, waits for them to be counted the first time
+    protected long getMineCount() {
+        return mineCount.join();
+    }
+
+    // Returns the # of cells opened
+    protected long getTilesOpened() {
+        return tilesOpened;
+    }
+
+    // Returns true once every cell that is not a Mine is opened
+    protected boolean isWon() {
+        return !lost && tilesOpened == (long)rows * cols - getMineCount();
+    }
+
+    // Returns true once a Mine was opened
+    protected boolean isLost() {
+        return lost;
+    }
+
+    // Returns the # of moves finished. Read it before reading cells from
+    // another thread to see every one of those moves
+    protected long getVersion() {
+        return version;
+    }
+
+    // Returns the top row, left column, bottom row and right column of the
+    // cells the last move opened or marked. The array is reused
+    protected int[] getChanged() {
+        return changed;
+    }
+
+    // Returns true if the cell at a row and column is a Mine
+    protected boolean isMine(int row, int col) {
+        long hash = seed + ((long)row * cols + col) * GOLDEN;    // SplitMix64 of the position
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return Long.compareUnsigned(hash ^ (hash >>> 31), threshold) < 0;
+    }
+
+    // Returns the # of Mines around a cell, or MINE for a Mine
+    protected int getSymbol(int row, int col) {
+        if(isMine(row, col))
+            return MINE;
+        int count = 0;
+        for(int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+            for(int c = Math.max(0, col - 1); c <= Math.min(cols - 1, col + 1); c++) {
+                if(isMine(r, c))
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    // Returns true if a cell has not been opened
+    protected boolean isHidden(int row, int col) {
+        return (cell(row, col) & OPENED) == 0;
+    }
+
+    // Returns NO_MARK, FLAG or QUESTION depending on the right click status
+    protected int getMark(int row, int col) {
+        return (cell(row, col) & MARK_MASK) >>> MARK_SHIFT;
+    }
+
+    // Changes the mark of a hidden cell from NO_MARK to FLAG to QUESTION and
+    // back to NO_MARK, returns the new mark
+    protected int cycleMark(int row, int col) {
+        int state = cell(row, col);
+        if((state & OPENED) != 0)
+            return NO_MARK;
+        int mark = (((state & MARK_MASK) >>> MARK_SHIFT) + 1) % 3;
+        setCell(row, col, (state & ~MARK_MASK) | (mark << MARK_SHIFT));
+        changed[0] = changed[2] = row;
+        changed[1] = changed[3] = col;
+        version++;
+        return mark;
+    }
+
+    // Does what a left click on a cell does: a cell that is hidden and not
+    // marked is opened, and a cell with no adjacent Mines opens every cell
+    // connected to it through such cells. Returns the # of cells opened,
+    // the area they are in can be read from getChanged()
+    protected long click(int row, int col) {
+        if(isOver() || cell(row, col) != 0)         // Opened or marked
+            return 0;
+        Arrays.fill(changed, -1);
+        long count = getSymbol(row, col) == 0 ? fill(row, col) : reveal(row, col);
+        if(isMine(row, col))
+            lost = true;
+        return moved(count);
+    }
+
+    // Does what a click on an opened number does: if as many neighbors have
+    // a Flag as the number says, every other hidden neighbor is opened and
+    // any zeros among them spread like a left click. Hitting a Mine loses.
+    // Returns the # of cells opened
+    protected long chord(int row, int col) {
+        if(isOver() || isHidden(row, col))
+            return 0;
+        int symbol = getSymbol(row, col);
+        int flags = 0;
+        for(int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+            for(int c = Math.max(0, col - 1); c <= Math.min(cols - 1, col + 1); c++) {
+                if(getMark(r, c) == FLAG && isHidden(r, c))
+                    flags++;
+            }
+        }
+        if(symbol == 0 || symbol == MINE || flags != symbol)
+            return 0;
+        Arrays.fill(changed, -1);
+        long count = 0;
+        for(int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+            for(int c = Math.max(0, col - 1); c <= Math.min(cols - 1, col + 1); c++) {
+                if(!isHidden(r, c) || getMark(r, c) == FLAG)
+                    continue;
+                if(isMine(r, c))
+                    lost = true;
+                count += getSymbol(r, c) == 0 ? fill(r, c) : reveal(r, c);
+            }
+        }
+        return moved(count);
+    }
+
+    // Returns true once the game is won or lost. While the Mines of a large
+    // board that is less than MAX_UNCOUNTED Mines are still being counted,
+    // it can not be won before half of it is opened: more than half of a
+    // million cells being Mines at that density is too unlikely to happen.
+    // So the first moves do not wait for the count
+    private boolean isOver() {
+        long cells = (long)rows * cols;
+        if(lost)
+            return true;
+        if(!mineCount.isDone() && cells >= MIN_UNCOUNTED && (threshold >>> 1) * 0x1p-63 < MAX_UNCOUNTED
+                && tilesOpened < cells / 2)
+            return false;
+        return isWon();
+    }
+
+    // Saves the opened count with the board and finishes a move
+    private long moved(long count) {
+        header.putLong(AT_OPENED, tilesOpened).put(AT_LOST, (byte)(lost ? 1 : 0));
+        version++;
+        return count;
+    }
+
+    // Returns true if a cell is hidden, not flagged and has no adjacent Mines,
+    // so opening it spreads
+    private boolean spreads(int row, int col) {
+        int state = cell(row, col);
+        return (state & OPENED) == 0 && (state & MARK_MASK) != FLAG << MARK_SHIFT && getSymbol(row, col) == 0;
+    }
+
+    // Opens a hidden cell that is not flagged, returns 1 if it was opened
+    private int reveal(int row, int col) {
+        if(row < 0 || col < 0 || row >= rows || col >= cols)
+            return 0;
+        int state = cell(row, col);
+        if((state & OPENED) != 0 || (state & MARK_MASK) == FLAG << MARK_SHIFT)
+            return 0;
+        if((state & PENDING) != 0) {                // Opened by a run next to it first
+            state &= ~PENDING;
+            pending--;
+        }
+        setCell(row, col, state | OPENED);
+        tilesOpened++;
+        if(changed[0] < 0) {
+            changed[0] = changed[2] = row;
+            changed[1] = changed[3] = col;
+        }
+        changed[0] = Math.min(changed[0], row);
+        changed[1] = Math.min(changed[1], col);
+        changed[2] = Math.max(changed[2], row);
+        changed[3] = Math.max(changed[3], col);
+        return 1;
+    }
+
+    // Opens every cell connected through zeros to a hidden zero, a row at a
+    // time. Each run of zeros in a row is opened with the numbers at it's
+    // ends, then the rows above and below are walked from one column before
+    // the run to one after: numbers are opened and each run of zeros found
+    // is pushed once. The stack holds at most MAX_STACK runs, any more are
+    // marked PENDING in the file and swept back in when the stack empties,
+    // so even an opening of most of a huge board uses a fixed bit of heap.
+    // Returns the # of cells opened
+    private long fill(int row, int col) {
+        long count = 0;
+        int top = push(0, row, col);
+        while(top > 0 || pending > 0) {
+            if(top == 0)
+                top = resume();
+            long next = stack[--top];
+            int r = (int)(next >>> 32);
+            int c = (int)next;
+            if(!spreads(r, c))                      // Pushed twice and opened since
+                continue;
+            int left = c, right = c;
+            while(left > 0 && spreads(r, left - 1))
+                left--;
+            while(right < cols - 1 && spreads(r, right + 1))
+                right++;
+            for(int x = left; x <= right; x++)
+                count += reveal(r, x);
+            count += reveal(r, left - 1) + reveal(r, right + 1);
+            int from = Math.max(0, left - 1);
+            int to = Math.min(cols - 1, right + 1);
+            for(int y = r - 1; y <= r + 1; y += 2) {
+                if(y < 0 || y >= rows)
+                    continue;
+                for(int x = from; x <= to; x++) {
+                    if(!spreads(y, x)) {
+                        count += reveal(y, x);      // Next to a zero, so never a Mine
+                        continue;
+                    }
+                    top = push(top, y, x);
+                    while(x < to && spreads(y, x + 1))
+                        x++;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Pushes a run of zeros to spread, or marks it PENDING once the stack is
+    // full. Returns the new top of the stack
+    private int push(int top, int row, int col) {
+        if(top == stack.length && top < MAX_STACK)
+            stack = Arrays.copyOf(stack, top * 2);
+        if(top < stack.length) {
+            stack[top++] = (long)row << 32 | col;
+            return top;
+        }
+        int state = cell(row, col);
+        if((state & PENDING) == 0) {
+            setCell(row, col, state | PENDING);
+            pending++;
+            pendingArea[0] = Math.min(pendingArea[0], row);
+            pendingArea[1] = Math.min(pendingArea[1], col);
+            pendingArea[2] = Math.max(pendingArea[2], row);
+            pendingArea[3] = Math.max(pendingArea[3], col);
+        }
+        return top;
+    }
+
+    // Moves cells marked PENDING back onto the empty stack until it is full,
+    // sweeping the pending area a row at a time. Returns the new top
+    private int resume() {
+        int top = 0;
+        for(int r = pendingArea[0]; r <= pendingArea[2]; r++) {
+            for(int c = pendingArea[1]; c <= pendingArea[3]; c++) {
+                int state = cell(r, c);
+                if((state & PENDING) == 0)
+                    continue;
+                if(top == stack.length)             // Rest of the row is swept next time
+                    return top;
+                setCell(r, c, state & ~PENDING);
+                pending--;
+                stack[top++] = (long)r << 32 | c;
+            }
+            pendingArea[0] = r + 1;
+        }
+        clearPending();
+        return top;
+    }
+
+    // Empties the pending area
+    private void clearPending() {
+        pendingArea[0] = pendingArea[1] = Integer.MAX_VALUE;
+        pendingArea[2] = pendingArea[3] = -1;
+    }
+
+    // Returns the 4 bits of a cell. A page of the file nobody wrote reads as
+    // zeros without going to disk
+    private int cell(int row, int col) {
+        long at = offset(row, col);
+        MappedByteBuffer chunk = chunk((int)(at >>> CHUNK_SHIFT));
+        int pair = chunk.get((int)(at & CHUNK_MASK));
+        return (col & 1) == 0 ? pair & 0xF : (pair >>> 4) & 0xF;
+    }
+
+    // Sets the 4 bits of a cell, mapping it's part of the file if needed
+    private void setCell(int row, int col, int state) {
+        long at = offset(row, col);
+        MappedByteBuffer chunk = chunk((int)(at >>> CHUNK_SHIFT));
+        int i = (int)(at & CHUNK_MASK);
+        int pair = chunk.get(i);
+        pair = (col & 1) == 0 ? (pair & 0xF0) | state : (pair & 0x0F) | (state << 4);
+        chunk.put(i, (byte)pair);
+    }
+
+    // Returns where the byte holding a cell is in the file
+    private long offset(int row, int col) {
+        long tile = (long)(row / TILE_ROWS) * tilesPerRow + col / TILE_COLS;
+        return HEADER_BYTES + tile * TILE_BYTES + (((row % TILE_ROWS) * TILE_COLS + col % TILE_COLS) >>> 1);
+    }
+
+    // Returns a part of the file, mapped the first time it is used. Mapping
+    // reads nothing, pages are only read when a cell on them is
+    private MappedByteBuffer chunk(int i) {
+        MappedByteBuffer chunk = chunks.get(i);
+        if(chunk != null)
+            return chunk;
+        long start = (long)i << CHUNK_SHIFT;
+        try {
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(1L << CHUNK_SHIFT, fileSize - start));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        chunks.compareAndSet(i, null, chunk);
+        return chunks.get(i);
+    }
+
+    /**
+     *  Counts the Mines in rows [from, to), splitting large bands of rows
+     *  between the workers. Only hashes are computed, nothing is read.
+     */
+    @SuppressWarnings("serial")
+    private final class CountTask extends RecursiveTask<Long> {
+
+        private final int from;
+        private final int to;
+
+        // CONSTRUCTOR
+        CountTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        // Counts a small band directly, or splits it in two
+        protected Long compute() {
+            if(to - from <= MIN_TASK_ROWS) {
+                long count = 0;
+                for(int r = from; r < to; r++) {
+                    for(int c = 0; c < cols; c++) {
+                        if(isMine(r, c))
+                            count++;
+                    }
+                }
+                return count;
+            }
+            int middle = (from + to) >>> 1;
+            CountTask top = new CountTask(from, middle);
+            top.fork();
+            long bottom = new CountTask(middle, to).compute();
+            return top.join() + bottom;
+        }
+    }
+}
\ No newline at end of file
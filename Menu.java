@@ -15,6 +15,7 @@ public class Menu extends JMenuBar {
         JMenuItem easy;
         JMenuItem medium;
         JMenuItem hard;
+      JCheckBoxMenuItem noGuess;
       JMenuItem scoreItem;
       JMenuItem exit;
 
@@ -30,6 +31,9 @@ public class Menu extends JMenuBar {
         easy = addItem("Easy", 'E', menuNew);
         medium = addItem("Normal", 'N', menuNew);
         hard = addItem("Difficult", 'D', menuNew);
+        noGuess = new JCheckBoxMenuItem("No Guessing");
+        noGuess.setMnemonic('G');
+        menuGame.add(noGuess);
         scoreItem = addItem("Score", 'S', menuGame);
         exit = addItem("Exit", 'E', menuGame);
         menuInfo = createMenu("Info", 'I');
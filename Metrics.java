@@ -0,0 +1,323 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.*;
+
+/**
+ *  This class deals with measuring what the game spends it's time on,
+ *  without a profiler attached. Code on a hot path keeps a Counter or a
+ *  Histogram in a static field and records into it, which costs a few
+ *  atomic adds and never allocates. Histograms keep a count per bucket,
+ *  where buckets are exact below 64 and then 32 per power of two, so any
+ *  percentile is within about 3% of the real value whatever the range.
+ *  Everything recorded can be exported in the Prometheus text format, to
+ *  a file written every few seconds and at exit (-Dmetrics.file=path,
+ *  -Dmetrics.interval=seconds) or over HTTP at /metrics (-Dmetrics.port=n).
+ *
+ *  The same places also commit JFR events, so a flight recording of a
+ *  session (-XX:StartFlightRecording) shows every slow click, flood fill,
+ *  paint, board generation and score write on a timeline, next to the GC
+ *  and thread activity that caused it.
+ */
+public final class Metrics {
+
+    private static final Map<String,Counter> COUNTERS = new ConcurrentHashMap<String,Counter>();
+    private static final Map<String,Histogram> HISTOGRAMS = new ConcurrentHashMap<String,Histogram>();
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static boolean started;                 // Used to start the exports only once
+
+    // CONSTRUCTOR
+    private Metrics() {
+
+    }
+
+    // Returns the Counter with a name, made the first time it is asked for
+    protected static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new Counter());
+    }
+
+    // Returns the Histogram with a name, made the first time it is asked for
+    protected static Histogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    // Starts the exports asked for with system properties, does nothing if none was
+    protected static synchronized void start() {
+        if(started)
+            return;
+        started = true;
+        new ClickEvent();                           // Loads JFR now, so the first click or board does not wait for it
+        String file = System.getProperty("metrics.file");
+        if(file != null) {
+            long interval = Long.getLong("metrics.interval", 10);
+            ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "metrics-export");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timer.scheduleAtFixedRate(() -> exportTo(Paths.get(file)), interval, interval, TimeUnit.SECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> exportTo(Paths.get(file)), "metrics-flush"));
+        }
+        Integer port = Integer.getInteger("metrics.port");
+        if(port != null) {
+            // Started from a daemon thread, which the server's own thread takes after,
+            // so serving metrics never keeps the program running
+            Thread starter = new Thread(() -> serve(port), "metrics-http");
+            starter.setDaemon(true);
+            starter.start();
+        }
+    }
+
+    // Serves every metric over HTTP at /metrics on a local port
+    private static void serve(int port) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = export().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.setExecutor(null);
+            server.start();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    // Writes every metric to a file, swapping it in with an atomic rename
+    private static void exportTo(Path path) {
+        try {
+            Path target = path.toAbsolutePath();
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.write(temp, export().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    // Returns every metric in the Prometheus text format, sorted by name
+    protected static String export() {
+        StringBuilder out = new StringBuilder();
+        for(Map.Entry<String,Counter> entry : new TreeMap<String,Counter>(COUNTERS).entrySet()) {
+            String name = name(entry.getKey());
+            out.append("# TYPE ").append(name).append(" counter\n");
+            out.append(name).append(' ').append(entry.getValue().get()).append('\n');
+        }
+        for(Map.Entry<String,Histogram> entry : new TreeMap<String,Histogram>(HISTOGRAMS).entrySet()) {
+            String name = name(entry.getKey());
+            Histogram histogram = entry.getValue();
+            out.append("# TYPE ").append(name).append(" summary\n");
+            for(double q : QUANTILES)
+                out.append(name).append("{quantile=\"").append(q).append("\"} ").append(histogram.percentile(q)).append('\n');
+            out.append(name).append("_max ").append(histogram.getMax()).append('\n');
+            out.append(name).append("_sum ").append(histogram.getSum()).append('\n');
+            out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+        }
+        return out.toString();
+    }
+
+    // Returns a metric name with the characters Prometheus allows
+    private static String name(String name) {
+        return "minesweeper_" + name.replace('.', '_').replace('-', '_');
+    }
+
+    /**
+     *  A count that only goes up, safe to add to from any thread.
+     */
+    protected static final class Counter {
+
+        private final LongAdder value = new LongAdder();
+
+        // Adds one
+        protected void increment() {
+            value.increment();
+        }
+
+        // Adds n
+        protected void add(long n) {
+            value.add(n);
+        }
+
+        // Returns the count
+        protected long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     *  Counts values in buckets that are exact below 64 and then split each
+     *  power of two in 32, safe to record into from any thread.
+     */
+    protected static final class Histogram {
+
+        private static final int LINEAR = 64;                       // Values with their own bucket
+        private static final int SUB_BITS = 5;                      // 32 buckets per power of two
+        private static final int BUCKETS = LINEAR + (64 - 6) * (1 << SUB_BITS);
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        // Records a value, negative values count as 0
+        protected void record(long value) {
+            value = Math.max(0, value);
+            buckets.incrementAndGet(bucketOf(value));
+            count.increment();
+            sum.add(value);
+            long seen;
+            while(value > (seen = max.get()) && !max.compareAndSet(seen, value));
+        }
+
+        // Records the time since a System.nanoTime
+        protected void recordSince(long start) {
+            record(System.nanoTime() - start);
+        }
+
+        // Returns the bucket of a value
+        private static int bucketOf(long value) {
+            if(value < LINEAR)
+                return (int)value;
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+            return LINEAR + (shift - 1) * (1 << SUB_BITS) + (int)(value >>> shift) - (1 << SUB_BITS);
+        }
+
+        // Returns the largest value that falls in a bucket
+        private static long highestIn(int bucket) {
+            if(bucket < LINEAR)
+                return bucket;
+            int shift = (bucket - LINEAR) / (1 << SUB_BITS) + 1;
+            long top = (bucket - LINEAR) % (1 << SUB_BITS) + (1 << SUB_BITS);
+            return ((top + 1) << shift) - 1;
+        }
+
+        // Returns the value that a fraction q of the values are at or below
+        protected long percentile(double q) {
+            long total = count.sum();
+            if(total == 0)
+                return 0;
+            long target = Math.max(1, (long)Math.ceil(q * total));
+            long seen = 0;
+            for(int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += buckets.get(bucket);
+                if(seen >= target)
+                    return Math.min(highestIn(bucket), max.get());
+            }
+            return max.get();
+        }
+
+        // Returns the # of values recorded
+        protected long getCount() {
+            return count.sum();
+        }
+
+        // Returns the sum of the values recorded
+        protected long getSum() {
+            return sum.sum();
+        }
+
+        // Returns the largest value recorded
+        protected long getMax() {
+            return max.get();
+        }
+    }
+
+    /**
+     *  A mouse click on the board, from the Listener getting it to the
+     *  Listener being done with it.
+     */
+    @Name("minesweeper.Click")
+    @Label("Click")
+    @Category("Minesweeper")
+    @Description("A mouse click handled on the event dispatch thread")
+    protected static final class ClickEvent extends Event {
+
+        @Label("Button")
+        protected int button;
+
+        @Label("Cells Opened")
+        protected int opened;
+
+        @Label("Queue Delay")
+        @Description("Time from the mouse event until the click was handled")
+        @Timespan(Timespan.NANOSECONDS)
+        protected long queueDelay;
+    }
+
+    /**
+     *  Opening every cell connected to an opened zero.
+     */
+    @Name("minesweeper.FloodFill")
+    @Label("Flood Fill")
+    @Category("Minesweeper")
+    protected static final class FloodFillEvent extends Event {
+
+        @Label("Cells Opened")
+        protected int cells;
+    }
+
+    /**
+     *  Painting the part of the board that changed.
+     */
+    @Name("minesweeper.Paint")
+    @Label("Paint")
+    @Category("Minesweeper")
+    protected static final class PaintEvent extends Event {
+
+        @Label("Tiles Painted")
+        protected int tiles;
+    }
+
+    /**
+     *  Building a board, or searching for one that needs no guessing.
+     */
+    @Name("minesweeper.Generate")
+    @Label("Generate Board")
+    @Category("Minesweeper")
+    protected static final class GenerateEvent extends Event {
+
+        @Label("Rows")
+        protected int rows;
+
+        @Label("Columns")
+        protected int cols;
+
+        @Label("Mines")
+        protected int mines;
+
+        @Label("Attempts")
+        @Description("Boards tried, 1 unless no guessing was asked for")
+        protected int attempts;
+    }
+
+    /**
+     *  Writing scores, a replay or a reset to disk.
+     */
+    @Name("minesweeper.ScoreWrite")
+    @Label("Score Write")
+    @Category("Minesweeper")
+    protected static final class ScoreWriteEvent extends Event {
+
+        @Label("File")
+        protected String file;
+
+        @Label("Bytes")
+        @DataAmount
+        protected long bytes;
+    }
+}
\ No newline at end of file
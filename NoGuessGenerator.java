@@ -0,0 +1,145 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  This class deals with making boards that never force a guess. A
+ *  candidate board is built from a seed, a cell with no adjacent mines is
+ *  picked as the start, and a Solver plays the board from there. The board
+ *  is kept only if the Solver opens every safe cell without guessing. One
+ *  worker per core tries seeds at the same time and all of them stop as
+ *  soon as one board passes. The board that is returned already has it's
+ *  start opened.
+ */
+public final class NoGuessGenerator {
+
+    private static final int MAX_ATTEMPTS = 100000; // Seeds tried before giving up on no-guess
+
+    // Time to find a board in nanoseconds and the # of seeds it took
+    private static final Metrics.Histogram GENERATE_NANOS = Metrics.histogram("noguess.generate.nanos");
+    private static final Metrics.Histogram ATTEMPTS = Metrics.histogram("noguess.attempts");
+
+    private final int rows;                         // # of Rows
+    private final int cols;                         // # of Columns
+    private final int mines;                        // # of Mines
+    private final ForkJoinPool pool;                // Workers trying seeds
+
+    // CONSTRUCTOR
+    NoGuessGenerator(int rows, int cols, int mines) {
+        this(rows, cols, mines, ForkJoinPool.commonPool());
+    }
+
+    // CONSTRUCTOR
+    NoGuessGenerator(int rows, int cols, int mines, ForkJoinPool pool) {
+        this.rows = rows;
+        this.cols = cols;
+        this.mines = mines;
+        this.pool = pool;
+    }
+
+    // Returns a board that can be solved from it's opened start without guessing.
+    // If no such board was found in MAX_ATTEMPTS seeds a normal board is returned
+    protected BoardModel generate() {
+        return generate(new SplittableRandom().nextLong());
+    }
+
+    // Same as generate(), seeds are taken in order from a base seed
+    protected BoardModel generate(long baseSeed) {
+        long start = System.nanoTime();
+        Metrics.GenerateEvent event = new Metrics.GenerateEvent();
+        event.begin();
+        AtomicLong found = new AtomicLong();
+        AtomicInteger winner = new AtomicInteger(Integer.MAX_VALUE);
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.max(1, pool.getParallelism());
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(workers);
+        for(int w = 0; w < workers; w++) {
+            tasks.add(pool.submit(() -> {
+                int attempt;
+                while((attempt = next.getAndIncrement()) < Math.min(MAX_ATTEMPTS, winner.get())) {
+                    long seed = seedOf(baseSeed, attempt);
+                    if(startCell(new BoardModel(rows, cols, mines, seed), true) >= 0) {
+                        // Keep the lowest attempt so the result only depends on the base seed
+                        synchronized(found) {
+                            if(attempt < winner.get()) {
+                                winner.set(attempt);
+                                found.set(seed);
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+        for(ForkJoinTask<?> task : tasks)
+            task.join();
+
+        int attempts = winner.get() == Integer.MAX_VALUE ? MAX_ATTEMPTS : winner.get() + 1;
+        BoardModel model;
+        if(winner.get() == Integer.MAX_VALUE) {
+            model = new BoardModel(rows, cols, mines, baseSeed);
+        }
+        else {
+            model = new BoardModel(rows, cols, mines, found.get());
+            model.open(startCell(model, false));
+        }
+        GENERATE_NANOS.recordSince(start);
+        ATTEMPTS.record(attempts);
+        event.end();
+        if(event.shouldCommit()) {
+            event.rows = rows;
+            event.cols = cols;
+            event.mines = mines;
+            event.attempts = attempts;
+            event.commit();
+        }
+        return model;
+    }
+
+    // Returns the seed of an attempt, spread out so nearby attempts are unrelated
+    private static long seedOf(long baseSeed, int attempt) {
+        return new SplittableRandom(baseSeed + attempt).nextLong();
+    }
+
+    // Returns the start of a board, the cell with no adjacent Mines closest to
+    // the middle, or -1 if there is none. If verify is true the board is also
+    // played out from the start and -1 is returned if that needs a guess
+    protected static int startCell(BoardModel model, boolean verify) {
+        int start = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        int middleRow = model.getRows() / 2;
+        int middleCol = model.getCols() / 2;
+        for(int cell = 0; cell < model.getIndexLimit(); cell++) {
+            if(!model.isCell(cell) || model.isMine(cell) || model.getSymbol(cell) != 0)
+                continue;
+            int distance = Math.abs(model.rowOf(cell) - middleRow) + Math.abs(model.colOf(cell) - middleCol);
+            if(distance < bestDistance) {
+                bestDistance = distance;
+                start = cell;
+            }
+        }
+        if(start < 0 || !verify)
+            return start;
+        return isSolvable(model, start) ? start : -1;
+    }
+
+    // Plays a board from a start cell using only cells the Solver proves safe,
+    // returns true if that opens every safe cell. The board is left played
+    protected static boolean isSolvable(BoardModel model, int start) {
+        Solver solver = new Solver(model);
+        int count = model.open(start);
+        solver.opened(model.getOpened(), count);
+        while(!model.isWon()) {
+            solver.solve();
+            int cell = solver.nextSafe();
+            if(cell < 0)
+                return false;
+            count = model.open(cell);
+            solver.opened(model.getOpened(), count);
+        }
+        return true;
+    }
+}
\ No newline at end of file
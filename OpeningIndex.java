@@ -0,0 +1,189 @@
+import java.util.Arrays;
+
+/**
+ *  This class deals with the openings of a board, the regions of
+ *  connected cells with no adjacent Mines. Clicking any cell of an opening
+ *  opens all of it plus the numbers around it. The regions are labeled
+ *  once with a union-find over the cells, and the cells each opening
+ *  opens are stored one region after another in a single array, so
+ *  opening a region is a walk over it's cells with no searching. A number
+ *  that touches two openings is stored with both. The same labels give
+ *  the # of openings, the # of isolated numbers (safe cells that touch no
+ *  opening) and the 3BV of the board, the fewest left clicks that solve
+ *  it, which is one per opening plus one per isolated number.
+ *
+ *  A Flag on a cell of an opening cuts the region for a left click, so
+ *  the Flags on each opening are counted and the model falls back to a
+ *  search while an opening has any.
+ */
+public final class OpeningIndex {
+
+    private final int[] region;                     // Opening of every cell with no adjacent Mines, -1 for others
+    private final int[] start;                      // Where each opening's cells begin in cells, one extra at the end
+    private final int[] cells;                      // Cells opened by each opening, one region after another
+    private final int[] flags;                      // # of Flags on the cells with no adjacent Mines of each opening
+    private final int isolated;                     // # of safe cells that touch no opening
+
+    // CONSTRUCTOR
+    OpeningIndex(BoardModel model) {
+        Topology topology = model.getTopology();
+        int limit = model.getIndexLimit();
+        region = new int[limit];                    // Used as the union-find parents first
+        for(int cell = 0; cell < limit; cell++) {
+            region[cell] = isZero(model, cell) ? cell : -1;
+            if(region[cell] < 0)
+                continue;
+            for(int offset : topology.offsets(cell)) {  // Neighbors are symmetric, earlier ones suffice
+                int next = cell + offset;
+                if(next < cell && region[next] >= 0)
+                    union(region, cell, next);
+            }
+        }
+
+        // A set's root is it's lowest cell, so every parent comes before it's
+        // child. Walking up the board, a root gets the next label and any
+        // other cell takes the label it's parent already got
+        int openings = 0;
+        for(int cell = 0; cell < limit; cell++) {
+            if(region[cell] == cell)
+                region[cell] = openings++;
+            else if(region[cell] >= 0)
+                region[cell] = region[region[cell]];
+        }
+
+        // Count then place the cells of each opening: it's own cells and every
+        // number next to them, each number once per opening it touches
+        start = new int[openings + 1];
+        int[] touched = new int[topology.maxNeighbors()];
+        int alone = 0;
+        for(int cell = 0; cell < limit; cell++) {
+            if(region[cell] >= 0) {
+                start[region[cell] + 1]++;
+                continue;
+            }
+            if(!model.isCell(cell) || model.isMine(cell))
+                continue;
+            int count = touching(topology, cell, touched);
+            if(count == 0)
+                alone++;
+            for(int i = 0; i < count; i++)
+                start[touched[i] + 1]++;
+        }
+        for(int r = 0; r < openings; r++)
+            start[r + 1] += start[r];
+        cells = new int[start[openings]];
+        int[] next = Arrays.copyOf(start, openings);
+        for(int cell = 0; cell < limit; cell++) {
+            if(region[cell] >= 0) {
+                cells[next[region[cell]]++] = cell;
+                continue;
+            }
+            if(!model.isCell(cell) || model.isMine(cell))
+                continue;
+            int count = touching(topology, cell, touched);
+            for(int i = 0; i < count; i++)
+                cells[next[touched[i]]++] = cell;
+        }
+        isolated = alone;
+        flags = new int[openings];
+        countFlags(model);
+    }
+
+    // Counts the Flags on the cells of every opening again, after the marks
+    // of the board were changed all at once
+    protected void countFlags(BoardModel model) {
+        Arrays.fill(flags, 0);
+        for(int cell = 0; cell < region.length; cell++) {
+            if(region[cell] >= 0 && model.getMark(cell) == BoardModel.FLAG)
+                flags[region[cell]]++;
+        }
+    }
+
+    // Returns true if a cell of the board is safe and has no adjacent Mines
+    private static boolean isZero(BoardModel model, int cell) {
+        return model.isCell(cell) && model.getSymbol(cell) == 0;
+    }
+
+    // Joins the sets of two cells under the lower root, halving the paths it walks
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if(rootA != rootB)
+            parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+    }
+
+    // Returns the root of a cell's set
+    private static int find(int[] parent, int cell) {
+        while(parent[cell] != cell) {
+            parent[cell] = parent[parent[cell]];
+            cell = parent[cell];
+        }
+        return cell;
+    }
+
+    // Puts the different openings a cell that is not in one touches in
+    // touched, returns how many there are
+    private int touching(Topology topology, int cell, int[] touched) {
+        int[] offsets = topology.offsets(cell);
+        int count = 0;
+        for(int i = 0; i < offsets.length; i++) {
+            int r = region[cell + offsets[i]];
+            if(r < 0 || (count > 0 && touched[count - 1] == r))
+                continue;
+            int j = 0;
+            while(j < count && touched[j] != r)
+                j++;
+            if(j == count)
+                touched[count++] = r;
+        }
+        return count;
+    }
+
+    // Returns the opening of a cell with no adjacent Mines, -1 for other cells
+    protected int regionOf(int cell) {
+        return region[cell];
+    }
+
+    // Returns where the cells of an opening begin in getCells()
+    protected int start(int opening) {
+        return start[opening];
+    }
+
+    // Returns where the cells of an opening end in getCells()
+    protected int end(int opening) {
+        return start[opening + 1];
+    }
+
+    // Returns the cells of every opening, read from start(r) to end(r).
+    // The array is shared and must not be changed
+    protected int[] getCells() {
+        return cells;
+    }
+
+    // Returns true if a Flag sits on a cell of an opening, so a left click
+    // does not open all of it
+    protected boolean isBlocked(int opening) {
+        return flags[opening] != 0;
+    }
+
+    // Counts a Flag put on (+1) or taken off (-1) a cell with no adjacent Mines
+    protected void flagged(int cell, int change) {
+        if(region[cell] >= 0)
+            flags[region[cell]] += change;
+    }
+
+    // Returns the # of openings
+    protected int getOpenings() {
+        return start.length - 1;
+    }
+
+    // Returns the # of safe cells that touch no opening
+    protected int getIsolated() {
+        return isolated;
+    }
+
+    // Returns the 3BV of the board, the fewest left clicks that solve it
+    protected int get3BV() {
+        return getOpenings() + isolated;
+    }
+}
\ No newline at end of file
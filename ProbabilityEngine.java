@@ -0,0 +1,295 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ *  This class deals with the chance that each hidden cell is a mine, given
+ *  the opened numbers and the # of mines on the board. A Solver keeps the
+ *  frontier and marks the cells that are certain. The rest of the frontier
+ *  is split into independent FrontierComponents whose mine placements are
+ *  counted exactly, or estimated by sampling in parallel when a component
+ *  is too large to count. The counts of all components are then combined
+ *  with the # of ways to place the remaining mines on the hidden cells that
+ *  touch no number. Components are remembered between updates, so after a
+ *  click only the components it changed are counted again.
+ */
+public final class ProbabilityEngine {
+
+    private static final int MAX_EXACT_CELLS = 40;  // Larger components are sampled
+    private static final long EXACT_BUDGET = 1 << 22; // Search steps before a component is sampled
+    private static final int SAMPLES = 1 << 16;     // Placements sampled per component
+
+    private final BoardModel model;                 // Board being looked at, only visible state is read
+    private final Solver solver;                    // Used to keep the frontier and the certain cells
+    private final ForkJoinPool pool;                // Workers counting components
+    private final int[] slot;                       // Scratch map used by FrontierComponent
+    private final double[] probability;             // Chance of a mine for cells in a component
+    private final int[] stamp;                      // Update a cell was last given a chance in
+    private int round;                              // # of updates so far
+    private double outside;                         // Chance of a mine for cells touching no number
+    private long seed;                              // Seed of the next sampling
+    private HashMap<Key,FrontierComponent> counted; // Components of the last update
+
+    // CONSTRUCTOR
+    ProbabilityEngine(BoardModel model) {
+        this(model, ForkJoinPool.commonPool());
+    }
+
+    // CONSTRUCTOR
+    ProbabilityEngine(BoardModel model, ForkJoinPool pool) {
+        this.model = model;
+        this.pool = pool;
+        solver = new Solver(model);
+        int limit = model.getIndexLimit();
+        slot = new int[limit];
+        Arrays.fill(slot, -1);
+        probability = new double[limit];
+        stamp = new int[limit];
+        counted = new HashMap<Key,FrontierComponent>();
+        seed = model.getSeed();
+        update();
+    }
+
+    // Tells the engine about the first count cells of opened, usually the
+    // cells returned by BoardModel.open(). Call update() afterwards
+    protected void opened(int[] opened, int count) {
+        solver.opened(opened, count);
+    }
+
+    // Returns the Solver behind the engine
+    protected Solver getSolver() {
+        return solver;
+    }
+
+    // Works out the chance of every hidden cell again
+    protected void update() {
+        round++;
+        solver.propagate();
+        List<FrontierComponent> components = solver.components();
+        HashMap<Key,FrontierComponent> current = new HashMap<Key,FrontierComponent>();
+        List<FrontierComponent> fresh = new ArrayList<FrontierComponent>();
+        for(int i = 0; i < components.size(); i++) {
+            FrontierComponent component = components.get(i);
+            Key key = new Key(component);
+            FrontierComponent old = counted.get(key);
+            if(old != null)
+                component = old;
+            else {
+                component.prepare(model, solver.getKnown(), slot);
+                fresh.add(component);
+            }
+            components.set(i, component);
+            current.put(key, component);
+        }
+        count(fresh);
+        counted = current;
+        combine(components);
+    }
+
+    // Counts every new component, all of them at the same time
+    private void count(List<FrontierComponent> fresh) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(fresh.size());
+        for(FrontierComponent component : fresh) {
+            long componentSeed = seed++;
+            tasks.add(pool.submit(() -> count(component, componentSeed)));
+        }
+        for(ForkJoinTask<?> task : tasks)
+            task.join();
+    }
+
+    // Counts a component exactly, or samples it in parallel when it is too large
+    private void count(FrontierComponent component, long componentSeed) {
+        if(component.cells.length <= MAX_EXACT_CELLS
+                && component.enumerate(model, solver.getKnown(), slot, EXACT_BUDGET))
+            return;
+        int parts = Math.max(1, pool.getParallelism());
+        SplittableRandom random = new SplittableRandom(componentSeed);
+        List<ForkJoinTask<FrontierComponent>> tasks = new ArrayList<ForkJoinTask<FrontierComponent>>(parts);
+        for(int p = 0; p < parts; p++) {
+            FrontierComponent copy = component.copy();
+            SplittableRandom split = random.split();
+            tasks.add(ForkJoinTask.adapt(() -> {
+                copy.sample(SAMPLES / parts, split);
+                return copy;
+            }).fork());
+        }
+        FrontierComponent sum = tasks.get(0).join();
+        for(int p = 1; p < parts; p++)                  // Running average of the parts
+            sum.merge(tasks.get(p).join(), (double)p / (p + 1), 1.0 / (p + 1));
+        component.solutions = sum.solutions;
+        component.hits = sum.hits;
+        component.exact = false;
+    }
+
+    // Combines the counts of all components with the ways to place the mines
+    // left over on the cells touching no number
+    private void combine(List<FrontierComponent> components) {
+        int m = components.size();
+        int minesLeft = model.getMineCount() - solver.getMinesFound();
+        int frontierCells = 0;
+        double[][] scaled = new double[m][];
+        for(int i = 0; i < m; i++) {
+            FrontierComponent component = components.get(i);
+            frontierCells += component.cells.length;
+            scaled[i] = normalize(component.solutions);
+        }
+        int rest = solver.getUnknownCount() - frontierCells;      // Cells touching no number
+
+        // prefix[i] is every component before i combined, suffix[i] every one from i on
+        double[][] prefix = new double[m + 1][];
+        double[][] suffix = new double[m + 1][];
+        prefix[0] = new double[] { 1 };
+        suffix[m] = new double[] { 1 };
+        for(int i = 0; i < m; i++)
+            prefix[i + 1] = convolve(prefix[i], scaled[i]);
+        for(int i = m - 1; i >= 0; i--)
+            suffix[i] = convolve(scaled[i], suffix[i + 1]);
+        double[] all = prefix[m];
+        double[] weight = restWeights(rest, minesLeft, all.length);
+
+        double total = 0;
+        double outsideMines = 0;
+        for(int k = 0; k < all.length; k++) {
+            total += all[k] * weight[k];
+            if(rest > 0)
+                outsideMines += all[k] * weight[k] * (minesLeft - k) / rest;
+        }
+        outside = total > 0 ? outsideMines / total : 0;
+
+        for(int i = 0; i < m; i++) {
+            FrontierComponent component = components.get(i);
+            double[] others = convolve(prefix[i], suffix[i + 1]);
+            double scale = max(component.solutions);
+            // through[k] is the weight of all placements where this component uses k mines
+            double[] through = new double[component.solutions.length];
+            for(int k = 0; k < through.length; k++) {
+                for(int j = 0; j < others.length && k + j < weight.length; j++)
+                    through[k] += others[j] * weight[k + j];
+            }
+            for(int v = 0; v < component.cells.length; v++) {
+                double hit = 0;
+                for(int k = 0; k < through.length; k++)
+                    hit += component.hits[k][v] / scale * through[k];
+                int cell = component.cells[v];
+                probability[cell] = total > 0 ? hit / total : 0;
+                stamp[cell] = round;
+            }
+        }
+    }
+
+    // Returns the weight of placing minesLeft - k mines on rest cells for every
+    // k, as C(rest, minesLeft - k) divided by the largest of them
+    private static double[] restWeights(int rest, int minesLeft, int length) {
+        double[] log = new double[length];
+        double best = Double.NEGATIVE_INFINITY;
+        for(int k = 0; k < length; k++) {
+            int n = minesLeft - k;
+            log[k] = n < 0 || n > rest ? Double.NEGATIVE_INFINITY : logChoose(rest, n);
+            best = Math.max(best, log[k]);
+        }
+        double[] weight = new double[length];
+        for(int k = 0; k < length; k++)
+            weight[k] = log[k] == Double.NEGATIVE_INFINITY ? 0 : Math.exp(log[k] - best);
+        return weight;
+    }
+
+    // Returns ln C(n, k), summing the smaller side of the product
+    private static double logChoose(int n, int k) {
+        k = Math.min(k, n - k);
+        double sum = 0;
+        for(int i = 1; i <= k; i++)
+            sum += Math.log((double)(n - k + i) / i);
+        return sum;
+    }
+
+    // Returns the counts divided by their largest value
+    private static double[] normalize(double[] counts) {
+        double scale = max(counts);
+        double[] scaled = new double[counts.length];
+        for(int k = 0; k < counts.length; k++)
+            scaled[k] = scale > 0 ? counts[k] / scale : 0;
+        return scaled;
+    }
+
+    // Returns the largest value of an array, 1 if they are all zero
+    private static double max(double[] values) {
+        double best = 0;
+        for(double value : values)
+            best = Math.max(best, value);
+        return best > 0 ? best : 1;
+    }
+
+    // Returns the ways to use k mines across two independent groups of cells
+    private static double[] convolve(double[] a, double[] b) {
+        double[] out = new double[a.length + b.length - 1];
+        for(int i = 0; i < a.length; i++) {
+            if(a[i] == 0)
+                continue;
+            for(int j = 0; j < b.length; j++)
+                out[i + j] += a[i] * b[j];
+        }
+        return out;
+    }
+
+    // Returns the chance that a cell is a mine as of the last update()
+    protected double probability(int cell) {
+        if(!model.isHidden(cell) || solver.isKnownSafe(cell))
+            return 0;
+        if(solver.isKnownMine(cell))
+            return 1;
+        return stamp[cell] == round ? probability[cell] : outside;
+    }
+
+    // Returns the hidden cell least likely to be a mine, -1 if none is left
+    protected int safestCell() {
+        int best = -1;
+        double bestChance = 2;
+        for(int cell = 0; cell < model.getIndexLimit(); cell++) {
+            if(!model.isCell(cell) || !model.isHidden(cell) || solver.isKnownMine(cell))
+                continue;
+            double chance = probability(cell);
+            if(chance < bestChance) {
+                bestChance = chance;
+                best = cell;
+                if(chance == 0)
+                    break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     *  Identifies a component by it's cells and numbers, in sorted order so
+     *  the same component is found again however the frontier was walked.
+     */
+    private static final class Key {
+
+        private final int[] data;
+        private final int hash;
+
+        // CONSTRUCTOR
+        Key(FrontierComponent component) {
+            int[] cells = component.cells.clone();
+            int[] numbers = component.numbers.clone();
+            Arrays.sort(cells);
+            Arrays.sort(numbers);
+            data = new int[cells.length + numbers.length + 1];
+            System.arraycopy(cells, 0, data, 0, cells.length);
+            data[cells.length] = -1;
+            System.arraycopy(numbers, 0, data, cells.length + 1, numbers.length);
+            hash = Arrays.hashCode(data);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(data, ((Key)other).data);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,217 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ *  This class deals with playing back a game recorded by a ReplayRecorder.
+ *  The board is built again from the recorded size, mine count and seed,
+ *  and the events are applied to it in order. While reading the recording
+ *  the board is saved every KEYFRAME_EVENTS events, so jumping to any point
+ *  only restores the closest saved board before it and applies at most
+ *  that many events. Playback at any speed is done by the caller turning
+ *  wall clock time into replay time and calling advance().
+ */
+public final class Replay {
+
+    private static final int KEYFRAME_EVENTS = 32;  // # of events between two saved boards
+    private static final long MAX_CELLS = 1 << 26;  // Largest board a replay may ask for
+
+    private final int rows;                         // # of Rows of the recorded board
+    private final int cols;                         // # of Columns of the recorded board
+    private final int mines;                        // # of Mines of the recorded board
+    private final long seed;                        // Seed of the recorded board
+    private final int[] kinds;                      // Kind of each event
+    private final int[] cells;                      // Cell of each event, as a board index
+    private final long[] times;                     // Time of each event since the first one
+    private final int interval;                     // # of events between two saved boards
+    private final BoardModel.State[] keyframes;     // Board before event i*interval
+    private final BoardModel model;                 // Board being played back
+    private final int end;                          // # of events when the game ended, -1 if it did not
+    private int position;                           // # of events applied to model
+
+    // CONSTRUCTOR
+    Replay(byte[] data) {
+        this(ByteBuffer.wrap(data), true);
+    }
+
+    // CONSTRUCTOR
+    // Reads a replay from the position of data to it's limit. A replay that
+    // is only played through once does not need the boards saved for seeking
+    Replay(ByteBuffer data, boolean seekable) {
+        try {
+            for(byte b : ReplayRecorder.MAGIC) {
+                if(data.get() != b)
+                    throw new IllegalArgumentException("Not a replay");
+            }
+            rows = (int)varint(data);
+            cols = (int)varint(data);
+            mines = (int)varint(data);
+            seed = data.getLong();
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Replay cut short");
+        }
+        if(rows < 1 || cols < 1 || (long)rows*cols > MAX_CELLS || mines < 0 || mines >= rows*cols)
+            throw new IllegalArgumentException("Bad board size");
+
+        int capacity = 16;
+        int[] k = new int[capacity];
+        int[] c = new int[capacity];
+        long[] t = new long[capacity];
+        int count = 0;
+        long time = 0;
+        while(data.hasRemaining()) {
+            if(count == capacity) {
+                capacity *= 2;
+                k = Arrays.copyOf(k, capacity);
+                c = Arrays.copyOf(c, capacity);
+                t = Arrays.copyOf(t, capacity);
+            }
+            long event = varint(data);
+            long position = event >>> 2;
+            if(position >= (long)rows*cols)
+                throw new IllegalArgumentException("Event outside the board");
+            k[count] = (int)(event & 3);
+            c[count] = (int)position;
+            long delta = varint(data);
+            if(count > 0)                           // The first event starts the clock
+                time += delta;
+            t[count] = time;
+            count++;
+        }
+        kinds = Arrays.copyOf(k, count);
+        times = Arrays.copyOf(t, count);
+        model = new BoardModel(rows, cols, mines, seed);
+        cells = new int[count];
+        for(int i = 0; i < count; i++)
+            cells[i] = model.index(c[i] / cols, c[i] % cols);
+
+        interval = seekable ? KEYFRAME_EVENTS : Integer.MAX_VALUE;
+        keyframes = new BoardModel.State[count / interval + 1];
+        int ended = -1;
+        for(int i = 0; i < count; i++) {
+            if(i % interval == 0)
+                keyframes[i / interval] = model.saveState();
+            apply(i);
+            if(ended < 0 && (model.isWon() || model.isLost()))
+                ended = i + 1;
+        }
+        if(count % interval == 0)
+            keyframes[count / interval] = model.saveState();
+        end = ended;
+        position = count;
+    }
+
+    // Applies event i to the board
+    private void apply(int i) {
+        switch (kinds[i]) {
+            case ReplayRecorder.CLICK:
+                model.click(cells[i]);
+                break;
+            case ReplayRecorder.MARK:
+                if(model.isHidden(cells[i]))
+                    model.cycleMark(cells[i]);
+                break;
+            case ReplayRecorder.CHORD:
+                model.chord(cells[i]);
+                break;
+        }
+    }
+
+    // Moves the board to just after the first n events
+    protected BoardModel seekEvent(int n) {
+        n = Math.max(0, Math.min(n, kinds.length));
+        if(n < position || n - position > interval) {
+            int keyframe = n / interval;
+            model.restoreState(keyframes[keyframe]);
+            position = keyframe * interval;
+        }
+        while(position < n)
+            apply(position++);
+        return model;
+    }
+
+    // Moves the board to how it looked a # of nanoseconds into the game
+    protected BoardModel seekTime(long nanos) {
+        return seekEvent(eventsUntil(nanos));
+    }
+
+    // Applies the events up to a # of nanoseconds into the game, returns the
+    // # of events applied. Used to play forward at any speed
+    protected int advance(long nanos) {
+        int before = position;
+        int n = eventsUntil(nanos);
+        if(n > position)
+            seekEvent(n);
+        return position - before;
+    }
+
+    // Returns the # of events that happened at or before a time
+    private int eventsUntil(long nanos) {
+        int found = Arrays.binarySearch(times, nanos);
+        if(found < 0)
+            return -found - 1;
+        while(found + 1 < times.length && times[found + 1] == nanos)
+            found++;
+        return found + 1;
+    }
+
+    // Returns the board as of the current position
+    protected BoardModel getModel() {
+        return model;
+    }
+
+    // Returns the # of events in the replay
+    protected int getEvents() {
+        return kinds.length;
+    }
+
+    // Returns the # of events after which the game was won or lost, -1 if
+    // the game never ended
+    protected int getEnd() {
+        return end;
+    }
+
+    // Returns the # of events applied so far
+    protected int getPosition() {
+        return position;
+    }
+
+    // Returns the time of the last event since the first one
+    protected long getDuration() {
+        return times.length == 0 ? 0 : times[times.length - 1];
+    }
+
+    // Returns the kind of event i
+    protected int kindOf(int i) {
+        return kinds[i];
+    }
+
+    // Returns the cell of event i
+    protected int cellOf(int i) {
+        return cells[i];
+    }
+
+    // Returns the time of event i since the first one
+    protected long timeOf(int i) {
+        return times[i];
+    }
+
+    // Returns the seed of the recorded board
+    protected long getSeed() {
+        return seed;
+    }
+
+    // Reads a value written 7 bits at a time
+    protected static long varint(ByteBuffer data) {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7) {
+            if(!data.hasRemaining())
+                throw new IllegalArgumentException("Replay cut short");
+            byte b = data.get();
+            value |= (long)(b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Bad varint");
+    }
+}
\ No newline at end of file
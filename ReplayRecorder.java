@@ -0,0 +1,103 @@
+/**
+ *  This class deals with recording a game as it is played, so it can be
+ *  played back or checked later. The recording starts with the size, mine
+ *  count and seed of the board, which is enough to build the same board
+ *  again, followed by one event per click. An event is the kind of click
+ *  and the cell, then the time since the event before in nanoseconds, each
+ *  written as a varint (7 bits per byte, high bit set when more bytes
+ *  follow). Events are written straight into a byte array that is made
+ *  large enough up front, so recording a click allocates nothing.
+ */
+public final class ReplayRecorder {
+
+    // Kinds of events
+    protected static final int CLICK = 0;           // Left click
+    protected static final int MARK = 1;            // Right click
+    protected static final int CHORD = 2;           // Middle or both button click on a number
+
+    protected static final byte[] MAGIC = { 'M', 'S', 'R', 1 };
+
+    private static final int INITIAL_BYTES = 4096;  // Room for a few hundred events
+
+    private final BoardModel model;                 // Board being recorded
+    private byte[] buffer;                          // Recording so far
+    private int size;                               // # of bytes used in buffer
+    private long last;                              // System.nanoTime of the last event
+    private boolean started;                        // Used to start the clock at the first cell opened
+    private int events;                             // # of events recorded
+
+    // CONSTRUCTOR
+    ReplayRecorder(BoardModel model) {
+        this.model = model;
+        buffer = new byte[INITIAL_BYTES];
+        for(byte b : MAGIC)
+            buffer[size++] = b;
+        writeVarint(model.getRows());
+        writeVarint(model.getCols());
+        writeVarint(model.getMineCount());
+        long seed = model.getSeed();
+        for(int i = 56; i >= 0; i -= 8)
+            buffer[size++] = (byte)(seed >>> i);
+        // A board that starts opened is recorded as a click on one of it's opened zeros
+        for(int cell = 0; cell < model.getIndexLimit() && model.getTilesOpened() > 0; cell++) {
+            if(model.isCell(cell) && !model.isHidden(cell) && model.getSymbol(cell) == 0) {
+                write(CLICK, cell, 0);
+                break;
+            }
+        }
+    }
+
+    // Records a left click on a cell made at System.nanoTime now
+    protected void click(int cell, long now) {
+        record(CLICK, cell, now);
+    }
+
+    // Records a right click on a cell made at System.nanoTime now
+    protected void mark(int cell, long now) {
+        record(MARK, cell, now);
+    }
+
+    // Records a chord on an opened number made at System.nanoTime now
+    protected void chord(int cell, long now) {
+        record(CHORD, cell, now);
+    }
+
+    // Returns the # of events recorded
+    protected int getEvents() {
+        return events;
+    }
+
+    // Returns a copy of the recording so far
+    protected byte[] toByteArray() {
+        return java.util.Arrays.copyOf(buffer, size);
+    }
+
+    // Records a click with the time since the click before. Like the
+    // GameClock the time starts at the first cell opened, marks made
+    // before it all happen at time 0
+    private void record(int kind, int cell, long now) {
+        write(kind, cell, started ? now - last : 0);
+        last = now;
+        started = started || kind != MARK;
+    }
+
+    // Writes a single event. Cells are stored by row and column so the
+    // recording does not depend on how the board lays out it's cells
+    private void write(int kind, int cell, long nanos) {
+        if(size + 20 > buffer.length)               // An event is at most 5 + 10 bytes
+            buffer = java.util.Arrays.copyOf(buffer, buffer.length*2);
+        int position = model.rowOf(cell)*model.getCols() + model.colOf(cell);
+        writeVarint(((long)position << 2) | kind);
+        writeVarint(nanos);
+        events++;
+    }
+
+    // Writes a value that is not negative, 7 bits at a time
+    private void writeVarint(long value) {
+        while((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte)value;
+    }
+}
\ No newline at end of file
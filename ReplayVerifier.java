@@ -0,0 +1,348 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ *  This class deals with checking that a winning score was really earned.
+ *  A submission is a player name, the time the player claims in
+ *  milliseconds and the replay recorded by a ReplayRecorder. The replay is
+ *  played again on a headless board built from it's seed, and the score is
+ *  only accepted if that game was won, nothing was clicked after it ended
+ *  and the claimed time is not shorter than the replay took. Only boards
+ *  of the game's Levels are played, so no submission can make a worker
+ *  build a bigger board. Submissions come one per .msr replay file or many
+ *  per .mss stream file, in which every record is a varint name length,
+ *  the name, a varint claimed time, a varint replay length and the
+ *  replay. Files are memory mapped and the
+ *  replays are checked straight from the mapping in batches on a
+ *  work-stealing pool, and only a few batches are in flight at a time so
+ *  memory stays the same however many submissions there are. One CSV row
+ *  is written per submission as soon as it's batch is done.
+ *
+ *  Usage: java ReplayVerifier [--threads t] [--seed s] [--batch n]
+ *                             [--out file] path...
+ */
+public final class ReplayVerifier {
+
+    protected static final String REPLAY = ".msr";          // Extension of single replay files
+    protected static final String STREAM = ".mss";          // Extension of submission stream files
+    protected static final String HEADER = "source,index,name,valid,reason,claimedMillis,replayMillis";
+
+    private static final long SLACK_NANOS = 1000000L;       // Claims are rounded down to milliseconds
+    private static final int MAX_NAME = 1024;               // Longest name in bytes
+
+    private final Long seed;                        // Seed every replay must be played on, null for any
+    private final int batch;                        // # of submissions checked per task
+    private ExecutorCompletionService<Batch> done;  // Batches of the current run as they finish
+    private int window;                             // Batches allowed in flight at once
+    private int inFlight;                           // Batches submitted and not yet written
+    private long[] counts;                          // # of submissions checked and valid so far
+    private Writer out;                             // Where the rows of the current run go
+
+    // CONSTRUCTOR
+    ReplayVerifier(Long seed, int batch) {
+        this.seed = seed;
+        this.batch = batch;
+    }
+
+    public static void main(String args[]) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Long seed = null;
+        int batch = 256;
+        String out = null;
+        List<Path> paths = new ArrayList<Path>();
+        for(int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--batch": batch = Integer.parseInt(args[++i]); break;
+                case "--out": out = args[++i]; break;
+                default:
+                    if(args[i].startsWith("--"))
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                    paths.add(Paths.get(args[i]));
+            }
+        }
+
+        ReplayVerifier verifier = new ReplayVerifier(seed, batch);
+        Writer writer = out == null ? new OutputStreamWriter(System.out) : new FileWriter(out);
+        try (BufferedWriter csv = new BufferedWriter(writer)) {
+            long[] counts = verifier.run(paths, threads, csv);
+            System.err.println("checked " + counts[0] + ", valid " + counts[1]);
+        }
+    }
+
+    // Checks every submission found under the paths on a pool of threads,
+    // writes one CSV row each to out and returns the # checked and valid
+    protected long[] run(List<Path> paths, int threads, Writer out) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        done = new ExecutorCompletionService<Batch>(pool);
+        window = threads * 4;
+        inFlight = 0;
+        counts = new long[2];
+        this.out = out;
+        out.write(HEADER + "\n");
+        try {
+            List<Path> replays = new ArrayList<Path>(batch);
+            for(Path path : files(paths)) {
+                if(path.toString().endsWith(STREAM)) {
+                    ByteBuffer stream = map(path);
+                    List<ByteBuffer> records = new ArrayList<ByteBuffer>(batch);
+                    long first = 0;
+                    while(stream.hasRemaining()) {
+                        records.add(nextRecord(stream));
+                        if(records.size() == batch || !stream.hasRemaining()) {
+                            List<ByteBuffer> part = records;
+                            long index = first;
+                            submit(() -> checkRecords(path.toString(), index, part));
+                            first += part.size();
+                            records = new ArrayList<ByteBuffer>(batch);
+                        }
+                    }
+                }
+                else {
+                    replays.add(path);
+                    if(replays.size() == batch) {
+                        List<Path> part = replays;
+                        submit(() -> checkReplays(part));
+                        replays = new ArrayList<Path>(batch);
+                    }
+                }
+            }
+            if(!replays.isEmpty()) {
+                List<Path> part = replays;
+                submit(() -> checkReplays(part));
+            }
+            while(inFlight > 0)
+                collect();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        out.flush();
+        return counts;
+    }
+
+    // Submits a batch, first waiting for one to finish if the window is full
+    private void submit(Callable<Batch> task) throws IOException, InterruptedException, ExecutionException {
+        while(inFlight >= window)
+            collect();
+        done.submit(task);
+        inFlight++;
+    }
+
+    // Waits for a batch to finish and writes it's rows
+    private void collect() throws IOException, InterruptedException, ExecutionException {
+        Batch result = done.take().get();
+        inFlight--;
+        counts[0] += result.checked;
+        counts[1] += result.valid;
+        out.write(result.rows.toString());
+    }
+
+    // Returns the replay and stream files among the paths, searching directories
+    private static List<Path> files(List<Path> paths) throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        for(Path path : paths) {
+            if(!Files.isDirectory(path)) {
+                files.add(path);
+                continue;
+            }
+            try (Stream<Path> walk = Files.walk(path)) {
+                walk.filter(p -> Files.isRegularFile(p)
+                        && (p.toString().endsWith(REPLAY) || p.toString().endsWith(STREAM)))
+                    .sorted()
+                    .forEach(files::add);
+            }
+        }
+        return files;
+    }
+
+    // Maps a whole file into memory for reading
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE)
+                throw new IOException(path + " is larger than 2 GB, split it");
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // Returns the next record of a stream as a view of the mapping, and moves
+    // the stream past it. A stream that is cut short ends with a record that
+    // holds whatever is left, so it is reported instead of lost
+    private static ByteBuffer nextRecord(ByteBuffer stream) {
+        int start = stream.position();
+        try {
+            int name = (int)Replay.varint(stream);
+            if(name < 0 || name > MAX_NAME)
+                throw new IllegalArgumentException("Bad name");
+            stream.position(stream.position() + name);
+            Replay.varint(stream);
+            long length = Replay.varint(stream);
+            if(length < 0 || length > stream.remaining())
+                throw new IllegalArgumentException("Record cut short");
+            stream.position(stream.position() + (int)length);
+        } catch (IllegalArgumentException e) {
+            stream.position(stream.limit());
+        }
+        return stream.duplicate().position(start).limit(stream.position()).slice();
+    }
+
+    // Checks the records of a stream numbered from index
+    private Batch checkRecords(String source, long index, List<ByteBuffer> records) {
+        Batch result = new Batch();
+        for(ByteBuffer record : records) {
+            String name = "";
+            long claimed = -1;
+            Verdict verdict;
+            try {
+                long size = Replay.varint(record);
+                if(size > MAX_NAME || size > record.remaining())
+                    throw new IllegalArgumentException("Bad name");
+                byte[] bytes = new byte[(int)size];
+                record.get(bytes);
+                name = new String(bytes, StandardCharsets.UTF_8);
+                claimed = Replay.varint(record);
+                int length = (int)Replay.varint(record);
+                verdict = verify(record.slice().limit(length), claimed);
+            } catch (RuntimeException e) {
+                verdict = new Verdict(false, "malformed", -1);
+            }
+            result.add(source, index++, name, claimed, verdict);
+        }
+        return result;
+    }
+
+    // Checks replay files on their own, without a claimed time
+    private Batch checkReplays(List<Path> replays) {
+        Batch result = new Batch();
+        for(Path path : replays) {
+            Verdict verdict;
+            try {
+                verdict = verify(map(path), -1);
+            } catch (IOException e) {
+                verdict = new Verdict(false, "unreadable", -1);
+            }
+            result.add(path.toString(), 0, "", -1, verdict);
+        }
+        return result;
+    }
+
+    // Plays a replay again and checks that it won in no more than the claimed
+    // time, a claim of -1 only checks the win
+    protected Verdict verify(ByteBuffer data, long claimedMillis) {
+        Replay replay;
+        try {
+            if(!isLevel(data))
+                return new Verdict(false, "not a level", -1);
+            replay = new Replay(data, false);
+        } catch (RuntimeException e) {
+            return new Verdict(false, "malformed", -1);
+        }
+        long millis = replay.getDuration() / 1000000;
+        if(seed != null && replay.getSeed() != seed)
+            return new Verdict(false, "wrong board", millis);
+        if(!replay.getModel().isWon())
+            return new Verdict(false, "not won", millis);
+        if(replay.getEnd() != replay.getEvents())
+            return new Verdict(false, "clicks after end", millis);
+        if(claimedMillis >= 0 && claimedMillis < (replay.getDuration() - SLACK_NANOS) / 1000000)
+            return new Verdict(false, "time too short", millis);
+        return new Verdict(true, "", millis);
+    }
+
+    // Returns true if a replay's board has the size and Mines of one of the
+    // Levels, read from it's header without building anything
+    private static boolean isLevel(ByteBuffer data) {
+        ByteBuffer header = data.duplicate();
+        if(header.remaining() < ReplayRecorder.MAGIC.length)
+            return false;
+        header.position(header.position() + ReplayRecorder.MAGIC.length);
+        long rows = Replay.varint(header);
+        long cols = Replay.varint(header);
+        long mines = Replay.varint(header);
+        for(Game.Level lv : Game.Level.values()) {
+            if(lv.rows == rows && lv.cols == cols && lv.mines == mines)
+                return true;
+        }
+        return false;
+    }
+
+    // Returns a stream record of a name, a claimed time and a replay
+    protected static byte[] submission(String name, long claimedMillis, byte[] replay) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length + replay.length + 15);
+        writeVarint(out, bytes.length);
+        out.writeBytes(bytes);
+        writeVarint(out, claimedMillis);
+        writeVarint(out, replay.length);
+        out.writeBytes(replay);
+        return out.toByteArray();
+    }
+
+    // Writes a value that is not negative, 7 bits at a time
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while((value & ~0x7FL) != 0) {
+            out.write((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int)value);
+    }
+
+    /**
+     *  Whether a submission was accepted, why not, and how long it's
+     *  replay took in milliseconds (-1 if it could not be read).
+     */
+    protected static final class Verdict {
+
+        protected final boolean valid;
+        protected final String reason;
+        protected final long replayMillis;
+
+        // CONSTRUCTOR
+        Verdict(boolean valid, String reason, long replayMillis) {
+            this.valid = valid;
+            this.reason = reason;
+            this.replayMillis = replayMillis;
+        }
+    }
+
+    /**
+     *  The CSV rows and counts of a batch of submissions.
+     */
+    private static final class Batch {
+
+        private final StringBuilder rows = new StringBuilder();
+        private long checked;
+        private long valid;
+
+        // Adds the row of a single submission
+        private void add(String source, long index, String name, long claimed, Verdict verdict) {
+            checked++;
+            if(verdict.valid)
+                valid++;
+            rows.append(csv(source)).append(',').append(index).append(',').append(csv(name)).append(',')
+                .append(verdict.valid ? 1 : 0).append(',').append(verdict.reason).append(',')
+                .append(claimed).append(',').append(verdict.replayMillis).append('\n');
+        }
+
+        // Quotes a value if it could break the CSV
+        private static String csv(String value) {
+            if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+                return value;
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+}
\ No newline at end of file
@@ -1,124 +1,116 @@
 import javax.swing.*;
 import java.io.*;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.EnumMap;
+import java.util.List;
 
 /**
  *  This class deals with the logic of the Score Board. The logic
- *  includes things like loading the top 10 scores from a file,
- *  saving the new top 10 scores to a file, parsing the lines
- *  read from a file and showing the Score Board when User clicks
- *  the Score button
+ *  includes things like loading the scores of every difficulty Level
+ *  from it's own file, saving a new score and the replay of the game,
+ *  and showing the top 10 scores of a Level when User clicks the Score
+ *  button. The scores of each Level
+ *  are kept in a Leaderboard in milliseconds, and all reading and writing
+ *  of the files is done in the background by a ScoreWriter. The single
+ *  score.txt of the first versions mixed every Level and does not say
+ *  which Level a score was made on, so it is not loaded or migrated: it
+ *  is left as it is and a note is printed while it exists
  */
 public class ScoreBoard extends JOptionPane {
 
-    private TreeMap<Integer,String> scores;             // Used to store user names and score
-    private final int N_SCORES = 10;                    // Used to specify the # scores to keep
+    private EnumMap<Game.Level,Leaderboard> scores;     // Used to store user names and score by Level
+    private ScoreWriter writer;                         // Used to read and write the files in the background
+    private ReplayVerifier verifier;                    // Used to check a score against it's replay
+    private final int N_SCORES = 10;                    // Used to specify the # scores to show
+    private final int N_KEPT = 100;                     // Used to specify the # scores kept with names
+    private final String REPLAY_DIR = "replays";        // Used to specify where replays are saved
+    private final String SUBMISSIONS = "submissions.mss"; // Used to specify where winning scores are sent
+    private final String OLD_SCORES = "score.txt";      // Used to specify the score file of every Level before
 
     // CONSTRUCTOR
     ScoreBoard() {
-        scores = new TreeMap<Integer, String>();
+        writer = new ScoreWriter();
+        verifier = new ReplayVerifier(null, 1);
+        scores = new EnumMap<Game.Level,Leaderboard>(Game.Level.class);
+        for(Game.Level lv : Game.Level.values())
+            scores.put(lv, new Leaderboard(scoreFile(lv, "-ms"), N_KEPT, writer));
     }
 
-    // Loads the names and scores from a file, parses it and stores it into a TreeMap
+    // Returns the score file of a Level
+    private File scoreFile(Game.Level lv, String suffix) {
+        return new File("score-" + lv.name().toLowerCase() + suffix + ".txt");
+    }
+
+    // Loads the names and scores of every Level from their files in the background.
+    // Scores from before they were kept in milliseconds are copied over first
     protected void load() {
-        try {
-            File score = new File("score.txt");
-
-            if(!score.exists()) {
-                score.createNewFile();
-            }
-
-            FileInputStream file = new FileInputStream(score);
-            DataInputStream in = new DataInputStream(file);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-
-            String strLine;
-            String parsedLine[];
-            String playerName = "";
-            int playerScore;
-
-            int loadedScores = 0;
-            while ((strLine = reader.readLine()) != null && loadedScores < N_SCORES)   {
-                parsedLine = strLine.split(" ");
-                for(int j = 0; j < parsedLine.length-1; j++) {
-                    playerName += parsedLine[j] + " ";
-                }
-                playerScore = Integer.parseInt(parsedLine[parsedLine.length-1]);
-                scores.put(playerScore, playerName);
-                playerName = "";
-                loadedScores++;
-            }
-
-            in.close();
-            file.close();
-            reader.close();
-
-        } catch (Exception e) {
-            System.err.println("Error: " + e.getMessage());
+        if(new File(OLD_SCORES).exists())
+            System.err.println("Note: " + OLD_SCORES + " holds scores of unknown Levels and is not loaded");
+        for(Game.Level lv : Game.Level.values()) {
+            Leaderboard board = scores.get(lv);
+            File seconds = scoreFile(lv, "");
+            writer.submit(() -> board.migrate(seconds, 1000));
+            writer.submit(board::load);
         }
     }
 
-    // Saves the names and scores stored in a TreeMap into a file
-    private void save() {
-        try {
-            File score = new File("score.txt");
-
-            if(!score.exists())
-                score.createNewFile();
-
-            BufferedWriter bw = new BufferedWriter(new FileWriter(score));
-
-            for(Map.Entry<Integer,String> entry : scores.entrySet()) {
-                bw.write(entry.getValue() + " " + entry.getKey());
-                bw.newLine();
-            }
-
-            bw.close();
+    // Saves the replay of a game of a Level in the background, named after the time it ended
+    protected void saveReplay(Game.Level lv, byte[] replay) {
+        writer.write(new File(REPLAY_DIR, lv.name().toLowerCase() + "-" + System.currentTimeMillis() + ReplayVerifier.REPLAY), replay);
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error: " + e.getMessage());
-        }
+    // Waits until every score has been written to disk
+    protected void flush() {
+        writer.flush();
     }
 
-    // Gets the length of longest name in the TreeMap (Used to somewhat format the ScoreBoard)
-    private int getLongestName() {
+    // Gets the length of longest name in a list of scores (Used to somewhat format the ScoreBoard)
+    private int getLongestName(List<Leaderboard.Entry> entries) {
         int nameLength = 0;
-        int i = 0;
 
-        for(Map.Entry<Integer,String> entry : scores.entrySet()) {
-            if(entry.getValue().length() > nameLength && i != N_SCORES)
-                nameLength = entry.getValue().length();
-            i++;
+        for(Leaderboard.Entry entry : entries) {
+            if(entry.name.length() > nameLength)
+                nameLength = entry.name.length();
         }
 
         return nameLength;
     }
 
-    // Prompts the user to input the name, gets the score and puts it into a TreeMap
-    protected void passWinnerScore(int score) {
+    // Prompts the user to input the name, gets the score in milliseconds and adds it to
+    // the Level's scores if the replay of the game backs it up. The score and replay are
+    // also saved as a submission that a ReplayVerifier can check again later
+    protected void passWinnerScore(Game.Level lv, int score, byte[] replay) {
+        ReplayVerifier.Verdict verdict = verifier.verify(java.nio.ByteBuffer.wrap(replay), score);
+        if(!verdict.valid) {
+            System.err.println("Error: score not recorded, " + verdict.reason);
+            return;
+        }
         String playerName;
         playerName = JOptionPane.showInputDialog(null, "Please type in your name", "You win", JOptionPane.PLAIN_MESSAGE);
-        scores.put(score, playerName);
-        save();
+        if(playerName == null)
+            return;
+        scores.get(lv).record(playerName, score);
+        writer.append(new File(SUBMISSIONS), ReplayVerifier.submission(playerName, score, replay));
+    }
+
+    // Returns the place a score would get on a Level, 1 for the best
+    protected int rankOf(Game.Level lv, int score) {
+        return scores.get(lv).rankOf(score);
     }
 
-    // Pops up a new Window with the top 10 scores
-    protected void showScore() {
+    // Pops up a new Window with the top 10 scores of a Level
+    protected void showScore(Game.Level lv) {
         String scoreString = "";
-        int printedScores = 0;
         int shiftAmount;
         String shift = "";
-
-        for(Map.Entry<Integer,String> entry : scores.entrySet()) {
-            if(printedScores < N_SCORES && entry.getValue() != null) {
-                shiftAmount = getLongestName() - entry.getValue().length();
-                for(int i = 0; i < shiftAmount; i++)
-                    shift += " ";
-                scoreString += shift + entry.getValue() + " | Score: " + entry.getKey() + "\n";
-                shift = "";
-            }
-            printedScores++;
+        List<Leaderboard.Entry> top = scores.get(lv).top(N_SCORES);
+        int longestName = getLongestName(top);
+
+        for(Leaderboard.Entry entry : top) {
+            shiftAmount = longestName - entry.name.length();
+            for(int i = 0; i < shiftAmount; i++)
+                shift += " ";
+            scoreString += shift + entry.name + " | Score: " + String.format("%d.%03d", entry.score / 1000, entry.score % 1000) + "\n";
+            shift = "";
         }
 
         Object options[] = {"RESET","OK"};
@@ -126,22 +118,11 @@ public class ScoreBoard extends JOptionPane {
                 JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE,
                 null, options, options[0]);
         if (m ==0)
-            reset();
+            reset(lv);
     }
 
-    // Resets the top 10 score board
-    private void reset() {
-        try {
-            File score = new File("score.txt");
-            if (!score.exists())
-                ;
-            else {
-                score.delete();
-                scores.clear();
-            }
-        }
-        catch (Exception e) {
-            System.err.println("Error: " + e.getMessage());
-        }
+    // Resets the scores of a Level
+    private void reset(Game.Level lv) {
+        scores.get(lv).reset();
     }
 }
\ No newline at end of file
@@ -0,0 +1,218 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  This class deals with writing scores to disk on a single background
+ *  thread, so a slow disk never freezes the game window. Jobs wait in a
+ *  bounded queue. When the thread wakes up it takes every job waiting,
+ *  and all lines appended to the same file in a row are written with one
+ *  write and one sync. Resetting a file swaps in an empty file with an
+ *  atomic rename, so a crash leaves either the old or the new file. Other
+ *  work like loading the scores can be run on the same thread, which keeps
+ *  it in order with the writes.
+ */
+public class ScoreWriter {
+
+    private static final int QUEUE_SIZE = 1024;     // # of jobs that can wait to be written
+    private static final long FLUSH_TIMEOUT = 5;    // Seconds flush() waits for the disk
+
+    // Time each write took including the sync, in nanoseconds, and bytes written
+    private static final Metrics.Histogram WRITE_NANOS = Metrics.histogram("score.write.nanos");
+    private static final Metrics.Counter WRITE_BYTES = Metrics.counter("score.write.bytes");
+
+    private final ArrayBlockingQueue<Job> queue;    // Jobs waiting for the writer thread
+    private final Thread writer;                    // Thread doing all the disk work
+
+    // CONSTRUCTOR
+    ScoreWriter() {
+        queue = new ArrayBlockingQueue<Job>(QUEUE_SIZE);
+        writer = new Thread(this::run, "score-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "score-flush"));
+    }
+
+    // Appends a line to the end of a file
+    protected void append(File file, String line) {
+        append(file, (line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Appends bytes to the end of a file
+    protected void append(File file, byte[] bytes) {
+        enqueue(new Job(file, bytes, null, null));
+    }
+
+    // Replaces a file with an empty one
+    protected void reset(File file) {
+        enqueue(new Job(file, null, null, null));
+    }
+
+    // Replaces a file with the given bytes
+    protected void write(File file, byte[] data) {
+        submit(() -> writeFile(file, data));
+    }
+
+    // Runs a task on the writer thread after every job queued before it
+    protected void submit(Runnable task) {
+        enqueue(new Job(null, null, task, null));
+    }
+
+    // Waits until every job queued so far has been written
+    protected void flush() {
+        if(Thread.currentThread() == writer)
+            return;
+        CountDownLatch done = new CountDownLatch(1);
+        if(!enqueue(new Job(null, null, null, done)))
+            return;
+        try {
+            if(!done.await(FLUSH_TIMEOUT, TimeUnit.SECONDS))
+                System.err.println("Error: scores were not written in time");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Adds a job to the queue, only waits for room if the disk fell far behind.
+    // If the writer thread has died the job is dropped instead of waiting
+    // forever. Returns true if the job was queued
+    private boolean enqueue(Job job) {
+        try {
+            while(writer.isAlive()) {
+                if(queue.offer(job, 1, TimeUnit.SECONDS))
+                    return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        System.err.println("Error: score writer stopped, a job was dropped");
+        return false;
+    }
+
+    // Takes every waiting job and does them in order, forever
+    private void run() {
+        ArrayList<Job> batch = new ArrayList<Job>();
+        Map<File,ByteArrayOutputStream> appends = new LinkedHashMap<File,ByteArrayOutputStream>();
+        while(true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            for(Job job : batch) {
+                if(job.bytes != null) {
+                    appends.computeIfAbsent(job.file, f -> new ByteArrayOutputStream()).writeBytes(job.bytes);
+                    continue;
+                }
+                writeAppends(appends);              // Keep appends in order with everything else
+                if(job.file != null)
+                    writeEmpty(job.file);
+                else if(job.task != null)
+                    runTask(job.task);
+                else
+                    job.done.countDown();
+            }
+            writeAppends(appends);
+            batch.clear();
+        }
+    }
+
+    // Writes all bytes gathered for each file with a single write and sync
+    private void writeAppends(Map<File,ByteArrayOutputStream> appends) {
+        for(Map.Entry<File,ByteArrayOutputStream> entry : appends.entrySet()) {
+            ByteBuffer bytes = ByteBuffer.wrap(entry.getValue().toByteArray());
+            long start = System.nanoTime();
+            Metrics.ScoreWriteEvent event = new Metrics.ScoreWriteEvent();
+            event.begin();
+            try (FileChannel channel = FileChannel.open(entry.getKey().toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while(bytes.hasRemaining())
+                    channel.write(bytes);
+                channel.force(false);
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+            }
+            written(event, start, entry.getKey(), bytes.position());
+        }
+        appends.clear();
+    }
+
+    // Swaps a file for an empty one with an atomic rename
+    private void writeEmpty(File file) {
+        writeFile(file, new byte[0]);
+    }
+
+    // Writes bytes to a temporary file then swaps it in with an atomic rename
+    private void writeFile(File file, byte[] data) {
+        long start = System.nanoTime();
+        Metrics.ScoreWriteEvent event = new Metrics.ScoreWriteEvent();
+        event.begin();
+        try {
+            Path target = file.toPath().toAbsolutePath();
+            Files.createDirectories(target.getParent());
+            Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer bytes = ByteBuffer.wrap(data);
+                while(bytes.hasRemaining())
+                    channel.write(bytes);
+                channel.force(false);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+        written(event, start, file, data.length);
+    }
+
+    // Records a write that started at a System.nanoTime
+    private void written(Metrics.ScoreWriteEvent event, long start, File file, long bytes) {
+        WRITE_NANOS.recordSince(start);
+        WRITE_BYTES.add(bytes);
+        event.end();
+        if(event.shouldCommit()) {
+            event.file = file.getPath();
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    // Runs a task without letting it stop the writer thread, not even with an
+    // Error like running out of memory
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable e) {
+            System.err.println("Error: " + e);
+        }
+    }
+
+    /**
+     *  A single piece of work for the writer thread. Bytes mean append, a
+     *  file without bytes means reset, otherwise it is a task or a flush.
+     */
+    private static final class Job {
+
+        private final File file;
+        private final byte[] bytes;
+        private final Runnable task;
+        private final CountDownLatch done;
+
+        // CONSTRUCTOR
+        Job(File file, byte[] bytes, Runnable task, CountDownLatch done) {
+            this.file = file;
+            this.bytes = bytes;
+            this.task = task;
+            this.done = done;
+        }
+    }
+}
\ No newline at end of file
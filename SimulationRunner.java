@@ -0,0 +1,209 @@
+import java.io.*;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *  This class deals with playing many complete games without a display.
+ *  Games follow the same rules as the Swing game: a left click opens a
+ *  hidden cell that is not marked, a Mine loses, and the game is won once
+ *  every cell that is not a Mine is open. Each game gets it's own board
+ *  seed, so any game can be played again. Games are played in chunks on a
+ *  work-stealing pool with one worker per thread. Every chunk is reduced to
+ *  one row of totals that is written as CSV as soon as it is done, and
+ *  only a few chunks are in flight at a time, so memory stays the same no
+ *  matter how many games are played.
+ *
+ *  Usage: java SimulationRunner [--games n] [--rows r] [--cols c] [--mines m]
+ *                               [--strategy random|logic|probability]
+ *                               [--threads t] [--seed s] [--chunk n]
+ *                               [--per-game] [--out file]
+ */
+public final class SimulationRunner {
+
+    private final int rows;                         // # of Rows of every board
+    private final int cols;                         // # of Columns of every board
+    private final int mines;                        // # of Mines of every board
+    private final String strategy;                  // Name of the Strategy to play with
+    private final long seed;                        // Seed the board seeds are made from
+    private final boolean perGame;                  // Used to write one row per game instead of per chunk
+
+    // CONSTRUCTOR
+    SimulationRunner(int rows, int cols, int mines, String strategy, long seed, boolean perGame) {
+        this.rows = rows;
+        this.cols = cols;
+        this.mines = mines;
+        this.strategy = strategy;
+        this.seed = seed;
+        this.perGame = perGame;
+        Strategy.forName(strategy);                 // Fails early on an unknown name
+    }
+
+    public static void main(String args[]) throws IOException {
+        long games = 10000;
+        int rows = 16, cols = 30, mines = 99;
+        String strategy = "logic";
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        int chunk = 1000;
+        boolean perGame = false;
+        String out = null;
+        for(int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games": games = Long.parseLong(args[++i]); break;
+                case "--rows": rows = Integer.parseInt(args[++i]); break;
+                case "--cols": cols = Integer.parseInt(args[++i]); break;
+                case "--mines": mines = Integer.parseInt(args[++i]); break;
+                case "--strategy": strategy = args[++i]; break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--chunk": chunk = Integer.parseInt(args[++i]); break;
+                case "--per-game": perGame = true; break;
+                case "--out": out = args[++i]; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        SimulationRunner runner = new SimulationRunner(rows, cols, mines, strategy, seed, perGame);
+        Writer writer = out == null ? new OutputStreamWriter(System.out) : new FileWriter(out);
+        try (BufferedWriter csv = new BufferedWriter(writer)) {
+            Totals totals = runner.run(games, chunk, threads, csv);
+            System.err.println(totals.row("total"));
+        }
+    }
+
+    // Plays a # of games split in chunks on a pool of threads, writes the CSV
+    // rows to out and returns the totals of all games
+    protected Totals run(long games, int chunk, int threads, Writer out) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ExecutorCompletionService<Chunk> done = new ExecutorCompletionService<Chunk>(pool);
+        int window = threads * 4;                   // Chunks allowed in flight at once
+        long chunks = (games + chunk - 1) / chunk;
+        long submitted = 0;
+        long finished = 0;
+        Totals totals = new Totals();
+        out.write(perGame ? "game,seed,won,clicks,3bv,micros\n" : Totals.HEADER + "\n");
+        try {
+            while(finished < chunks) {
+                while(submitted < chunks && submitted - finished < window) {
+                    long index = submitted;
+                    long first = index * chunk;
+                    int count = (int)Math.min(chunk, games - first);
+                    done.submit(() -> playChunk(index, first, count));
+                    submitted++;
+                }
+                Chunk result = done.take().get();
+                finished++;
+                totals.add(result.totals);
+                out.write(result.rows);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        out.flush();
+        return totals;
+    }
+
+    // Plays the games numbered [first, first+count) of a chunk
+    private Chunk playChunk(long index, long first, int count) {
+        Totals totals = new Totals();
+        StringBuilder rows = new StringBuilder();
+        for(long game = first; game < first + count; game++) {
+            long boardSeed = new SplittableRandom(seed + game).nextLong();
+            long start = System.nanoTime();
+            BoardModel model = new BoardModel(this.rows, cols, mines, boardSeed);
+            int clicks = play(model, Strategy.forName(strategy), new SplittableRandom(boardSeed));
+            long nanos = System.nanoTime() - start;
+            int bbbv = model.getOpenings().get3BV();
+            totals.add(model.isWon(), clicks, bbbv, nanos);
+            if(perGame)
+                rows.append(game).append(',').append(boardSeed).append(',').append(model.isWon() ? 1 : 0)
+                    .append(',').append(clicks).append(',').append(bbbv).append(',').append(nanos / 1000).append('\n');
+        }
+        if(!perGame)
+            rows.append(totals.row(Long.toString(index))).append('\n');
+        return new Chunk(totals, rows.toString());
+    }
+
+    // Plays a game to the end, returns the # of clicks it took
+    protected static int play(BoardModel model, Strategy strategy, SplittableRandom random) {
+        strategy.start(model, random);
+        int clicks = 0;
+        while(!model.isWon() && !model.isLost()) {
+            int cell = strategy.nextClick();
+            if(cell < 0)
+                break;
+            int count = model.click(cell);
+            clicks++;
+            if(count > 0)
+                strategy.opened(model.getOpened(), count);
+        }
+        return clicks;
+    }
+
+    /**
+     *  The totals of a chunk of games and the CSV rows written for it.
+     */
+    private static final class Chunk {
+
+        private final Totals totals;
+        private final String rows;
+
+        // CONSTRUCTOR
+        Chunk(Totals totals, String rows) {
+            this.totals = totals;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     *  Running totals over any # of games.
+     */
+    protected static final class Totals {
+
+        protected static final String HEADER = "chunk,games,wins,winRate,avgClicks,avg3bv,avgMicros";
+
+        private long games;
+        private long wins;
+        private long clicks;
+        private long bbbv;
+        private long nanos;
+
+        // Adds a single game
+        private void add(boolean won, int gameClicks, int gameBbbv, long gameNanos) {
+            games++;
+            if(won)
+                wins++;
+            clicks += gameClicks;
+            bbbv += gameBbbv;
+            nanos += gameNanos;
+        }
+
+        // Adds the totals of other games
+        private void add(Totals other) {
+            games += other.games;
+            wins += other.wins;
+            clicks += other.clicks;
+            bbbv += other.bbbv;
+            nanos += other.nanos;
+        }
+
+        // Returns the # of games won out of the games played
+        protected double winRate() {
+            return games == 0 ? 0 : (double)wins / games;
+        }
+
+        // Returns a CSV row of the totals with a label in front
+        protected String row(String label) {
+            double n = Math.max(1, games);
+            return String.format(Locale.ROOT, "%s,%d,%d,%.4f,%.2f,%.2f,%.1f", label, games, wins, winRate(),
+                    clicks / n, bbbv / n, nanos / n / 1000);
+        }
+    }
+}
\ No newline at end of file
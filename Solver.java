@@ -0,0 +1,426 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *  This class deals with finding cells that are safe or mines by pure
+ *  logic, looking only at what a player can see. It keeps the frontier,
+ *  the opened numbers that still touch unknown hidden cells, up to date
+ *  as cells are opened, and only checks the numbers near a change again.
+ *  Each number is first checked on it's own (it needs no more mines, or
+ *  all of it's unknown cells are mines), then against nearby numbers whose
+ *  unknown cells are a subset of it's own. If that finds nothing the
+ *  frontier is split into independent FrontierComponents and every mine
+ *  placement of each is counted. Cells found safe are queued and can be
+ *  taken with nextSafe().
+ */
+public final class Solver {
+
+    // What is known about a cell
+    protected static final byte UNKNOWN = 0;
+    protected static final byte SAFE = 1;
+    protected static final byte MINE = 2;
+
+    private static final int MAX_ENUM_CELLS = 48;   // Larger components are not enumerated
+    private static final long ENUM_BUDGET = 1 << 20;  // Search steps allowed per component
+
+    private final BoardModel model;                 // Board being solved, only visible state is read
+    private final Topology topology;                // Layout of the cells and their neighbors
+    private final byte[] known;                     // What is known about every cell
+    private final boolean[] open;                   // Cells the solver was told are opened
+    private final int[] frontier;                   // Opened numbers touching unknown cells
+    private final int[] frontierPos;                // Position of a cell in frontier, -1 if not in it
+    private int frontierSize;
+    private final int[] work;                       // Numbers that need to be checked again
+    private final boolean[] queued;                 // Used to keep numbers in work only once
+    private int workSize;
+    private final int[] safe;                       // Cells found safe that are still hidden
+    private int safeSize;
+    private final int[] slot;                       // Scratch map from cell to position, -1 if none
+    private int minesFound;                         // # of cells known to be mines
+    private int safeHidden;                         // # of cells known to be safe that are still hidden
+
+    // Scratch space for a single number
+    private final int[] unknownA;
+    private final int[] unknownB;
+    private final int[] nearby;
+
+    // CONSTRUCTOR
+    Solver(BoardModel model) {
+        this.model = model;
+        topology = model.getTopology();
+        int limit = model.getIndexLimit();
+        known = new byte[limit];
+        open = new boolean[limit];
+        frontier = new int[model.getBoardSize()];
+        frontierPos = new int[limit];
+        work = new int[model.getBoardSize()];
+        queued = new boolean[limit];
+        safe = new int[model.getBoardSize()];
+        slot = new int[limit];
+        Arrays.fill(frontierPos, -1);
+        Arrays.fill(slot, -1);
+        int max = topology.maxNeighbors();
+        unknownA = new int[max];
+        unknownB = new int[max];
+        nearby = new int[max*max*2];
+        opened(model);
+    }
+
+    // Adds every cell already opened on the board
+    private void opened(BoardModel board) {
+        for(int cell = 0; cell < board.getIndexLimit(); cell++) {
+            if(board.isCell(cell) && !board.isHidden(cell))
+                opened(cell);
+        }
+    }
+
+    // Tells the solver about the first count cells of opened, usually the
+    // cells returned by BoardModel.open()
+    protected void opened(int[] opened, int count) {
+        for(int i = 0; i < count; i++)
+            opened(opened[i]);
+    }
+
+    // Tells the solver about a single opened cell, a cell it was told about
+    // before is skipped so it's never counted or put in frontier twice
+    protected void opened(int cell) {
+        if(open[cell] || model.isMine(cell))
+            return;
+        open[cell] = true;
+        if(known[cell] == SAFE)
+            safeHidden--;
+        known[cell] = SAFE;
+        if(model.getSymbol(cell) > 0) {
+            frontierPos[cell] = frontierSize;
+            frontier[frontierSize++] = cell;
+            enqueue(cell);
+        }
+        requeueAround(cell);
+    }
+
+    // Returns true if a cell is known to be a mine
+    protected boolean isKnownMine(int cell) {
+        return known[cell] == MINE;
+    }
+
+    // Returns true if a cell is known to be safe
+    protected boolean isKnownSafe(int cell) {
+        return known[cell] == SAFE;
+    }
+
+    // Returns the # of cells known to be mines
+    protected int getMinesFound() {
+        return minesFound;
+    }
+
+    // Returns the # of hidden cells nothing is known about
+    protected int getUnknownCount() {
+        return model.getBoardSize() - model.getTilesOpened() - minesFound - safeHidden;
+    }
+
+    // Returns what is known about every cell, UNKNOWN, SAFE or MINE. The array
+    // belongs to the solver and must not be changed
+    protected byte[] getKnown() {
+        return known;
+    }
+
+    // Returns the # of opened numbers that still touch unknown cells
+    protected int getFrontierSize() {
+        return frontierSize;
+    }
+
+    // Returns a cell that is known to be safe and still hidden, -1 if there is none
+    protected int nextSafe() {
+        while(safeSize > 0) {
+            int cell = safe[--safeSize];
+            if(model.isHidden(cell))
+                return cell;
+        }
+        return -1;
+    }
+
+    // Returns true if a safe cell is waiting to be opened
+    protected boolean hasSafe() {
+        while(safeSize > 0 && !model.isHidden(safe[safeSize - 1]))
+            safeSize--;
+        return safeSize > 0;
+    }
+
+    // Applies the rules until nothing new is found. Enumeration is only used
+    // if the simple rules found no safe cell. Returns the # of cells found
+    protected int solve() {
+        int found = 0;
+        while(true) {
+            found += applyRules();
+            if(hasSafe())
+                return found;
+            int enumerated = enumerate();
+            if(enumerated == 0)
+                return found;
+            found += enumerated;
+        }
+    }
+
+    // Applies only the single point and subset rules to the numbers changed
+    // since the last call. Returns the # of cells found
+    protected int propagate() {
+        return applyRules();
+    }
+
+    // Checks every queued number with the single point and subset rules
+    private int applyRules() {
+        int found = 0;
+        while(workSize > 0) {
+            int number = work[--workSize];
+            queued[number] = false;
+            if(frontierPos[number] < 0)
+                continue;
+            int single = applySinglePoint(number);
+            found += single;
+            if(single == 0 && frontierPos[number] >= 0)
+                found += applySubset(number);
+        }
+        return found;
+    }
+
+    // A number that needs no more mines makes all of it's unknown cells safe,
+    // a number that needs as many mines as it has unknown cells makes them all mines
+    private int applySinglePoint(int number) {
+        int unknown = unknownAround(number, unknownA);
+        if(unknown == 0) {
+            removeFrontier(number);
+            return 0;
+        }
+        int needed = neededAround(number);
+        if(needed == 0) {
+            for(int i = 0; i < unknown; i++)
+                markSafe(unknownA[i]);
+            return unknown;
+        }
+        if(needed == unknown) {
+            for(int i = 0; i < unknown; i++)
+                markMine(unknownA[i]);
+            return unknown;
+        }
+        return 0;
+    }
+
+    // Compares a number with every frontier number sharing an unknown cell.
+    // If the unknown cells of one are a subset of the other's, the cells only
+    // the larger one touches hold exactly the difference of the mines they need
+    private int applySubset(int a) {
+        int sizeA = unknownAround(a, unknownA);
+        int needA = neededAround(a);
+        int candidates = 0;
+        for(int i = 0; i < sizeA; i++) {
+            int cell = unknownA[i];
+            for(int offset : topology.offsets(cell)) {
+                int b = cell + offset;
+                if(b != a && frontierPos[b] >= 0 && !contains(nearby, candidates, b))
+                    nearby[candidates++] = b;
+            }
+        }
+        for(int k = 0; k < candidates; k++) {
+            int b = nearby[k];
+            int sizeB = unknownAround(b, unknownB);
+            int needB = neededAround(b);
+            int found = 0;
+            if(sizeA < sizeB && allTouch(unknownA, sizeA, b))
+                found = applyDifference(unknownB, sizeB, a, needB - needA, sizeB - sizeA);
+            else if(sizeB < sizeA && allTouch(unknownB, sizeB, a))
+                found = applyDifference(unknownA, sizeA, b, needA - needB, sizeA - sizeB);
+            if(found > 0)
+                return found;
+        }
+        return 0;
+    }
+
+    // Marks the cells of a larger set that the smaller number does not touch,
+    // if they need no mines or are all mines. Returns the # of cells marked
+    private int applyDifference(int[] larger, int size, int smaller, int mines, int cells) {
+        if(mines != 0 && mines != cells)
+            return 0;
+        int found = 0;
+        for(int i = 0; i < size; i++) {
+            int cell = larger[i];
+            if(touches(smaller, cell))
+                continue;
+            if(mines == 0)
+                markSafe(cell);
+            else
+                markMine(cell);
+            found++;
+        }
+        return found;
+    }
+
+    // Splits the frontier into independent components and counts the mine
+    // placements of each, cells that are safe or mines in every placement are
+    // marked. Returns the # of cells marked
+    private int enumerate() {
+        int found = 0;
+        for(FrontierComponent component : components()) {
+            if(component.cells.length > MAX_ENUM_CELLS)
+                continue;
+            if(!component.enumerate(model, known, slot, ENUM_BUDGET))
+                continue;
+            double total = component.totalSolutions();
+            if(total == 0)
+                continue;
+            for(int i = 0; i < component.cells.length; i++) {
+                double hit = component.totalHits(i);
+                if(hit == 0) {
+                    markSafe(component.cells[i]);
+                    found++;
+                }
+                else if(hit == total) {
+                    markMine(component.cells[i]);
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    // Splits the unknown cells touching the frontier into groups, where two
+    // cells are in the same group if a number touches both
+    protected List<FrontierComponent> components() {
+        List<FrontierComponent> components = new ArrayList<FrontierComponent>();
+        int[] cellQueue = new int[model.getBoardSize()];
+        int[] numberList = new int[frontierSize];
+        for(int f = 0; f < frontierSize; f++) {
+            int start = frontier[f];
+            if(slot[start] >= 0)
+                continue;
+            int numberCount = 0;
+            int cellCount = 0;
+            int head = 0;
+            slot[start] = 0;
+            numberList[numberCount++] = start;
+            while(head < numberCount) {
+                int number = numberList[head++];
+                for(int offset : topology.offsets(number)) {
+                    int cell = number + offset;
+                    if(!isUnknown(cell) || slot[cell] >= 0)
+                        continue;
+                    slot[cell] = 0;
+                    cellQueue[cellCount++] = cell;
+                    for(int back : topology.offsets(cell)) {
+                        int other = cell + back;
+                        if(frontierPos[other] >= 0 && slot[other] < 0) {
+                            slot[other] = 0;
+                            numberList[numberCount++] = other;
+                        }
+                    }
+                }
+            }
+            int[] cells = Arrays.copyOf(cellQueue, cellCount);
+            for(int cell : cells)
+                slot[cell] = -1;
+            if(cellCount > 0)
+                components.add(new FrontierComponent(cells, Arrays.copyOf(numberList, numberCount)));
+        }
+        for(int f = 0; f < frontierSize; f++)
+            slot[frontier[f]] = -1;
+        return components;
+    }
+
+    // Returns true if a cell is hidden and nothing is known about it
+    protected boolean isUnknown(int cell) {
+        return known[cell] == UNKNOWN && model.isCell(cell) && model.isHidden(cell);
+    }
+
+    // Marks a cell as safe and queues it to be opened
+    private void markSafe(int cell) {
+        if(known[cell] != UNKNOWN)
+            return;
+        known[cell] = SAFE;
+        safeHidden++;
+        safe[safeSize++] = cell;
+        requeueAround(cell);
+    }
+
+    // Marks a cell as a mine
+    private void markMine(int cell) {
+        if(known[cell] != UNKNOWN)
+            return;
+        known[cell] = MINE;
+        minesFound++;
+        requeueAround(cell);
+    }
+
+    // Queues every frontier number around a cell to be checked again
+    private void requeueAround(int cell) {
+        for(int offset : topology.offsets(cell)) {
+            int next = cell + offset;
+            if(frontierPos[next] >= 0)
+                enqueue(next);
+        }
+    }
+
+    // Queues a number to be checked again
+    private void enqueue(int number) {
+        if(!queued[number]) {
+            queued[number] = true;
+            work[workSize++] = number;
+        }
+    }
+
+    // Takes a number off the frontier once it touches no unknown cells
+    private void removeFrontier(int number) {
+        int pos = frontierPos[number];
+        int last = frontier[--frontierSize];
+        frontier[pos] = last;
+        frontierPos[last] = pos;
+        frontierPos[number] = -1;
+    }
+
+    // Stores the unknown cells around a number, returns how many there are
+    private int unknownAround(int number, int[] out) {
+        int count = 0;
+        for(int offset : topology.offsets(number)) {
+            int cell = number + offset;
+            if(isUnknown(cell))
+                out[count++] = cell;
+        }
+        return count;
+    }
+
+    // Returns the # of mines a number still needs among it's unknown cells
+    private int neededAround(int number) {
+        int needed = model.getSymbol(number);
+        for(int offset : topology.offsets(number)) {
+            if(known[number + offset] == MINE)
+                needed--;
+        }
+        return needed;
+    }
+
+    // Returns true if a number touches a cell
+    private boolean touches(int number, int cell) {
+        for(int offset : topology.offsets(number)) {
+            if(number + offset == cell)
+                return true;
+        }
+        return false;
+    }
+
+    // Returns true if a number touches every one of the first size cells
+    private boolean allTouch(int[] cells, int size, int number) {
+        for(int i = 0; i < size; i++) {
+            if(!touches(number, cells[i]))
+                return false;
+        }
+        return true;
+    }
+
+    // Returns true if the first size entries of an array hold a value
+    private static boolean contains(int[] array, int size, int value) {
+        for(int i = 0; i < size; i++) {
+            if(array[i] == value)
+                return true;
+        }
+        return false;
+    }
+}
\ No newline at end of file
@@ -7,11 +7,18 @@ import java.awt.event.MouseListener;
 
 /**
  *  This class is used by Game class to display the information about the
- *  game when it is being played
+ *  game when it is being played. The time shown is read from the GameClock
+ *  of the game every time the Timer fires, the Timer only decides how
+ *  often it is shown and never changes the time itself. Each Game has
+ *  it's own StatusBar and Timer
  */
 public class StatusBar extends JPanel implements ActionListener {
 
-    private static Timer timer;
+    private static final int REFRESH_MILLIS = 100;  // Time between two updates of the time shown
+    private static final int MAX_SHOWN = 999;       // Most seconds shown
+
+    private final Timer timer;                      // Used to update the time shown
+    private GameClock clock;                        // Clock of the game being played
     private JLabel timeElapsed;
     private JLabel remainingMines;
     private JButton restart;
@@ -19,7 +26,7 @@ public class StatusBar extends JPanel implements ActionListener {
 
     // CONSTRUCTOR
     StatusBar(Game game) {
-        timer = new Timer(1000, this);
+        timer = new Timer(REFRESH_MILLIS, this);
         timeElapsed = new JLabel("0");
         remainingMines = new JLabel(game.getMinesLeft()+"");
         restart = new JButton();
@@ -39,36 +46,32 @@ public class StatusBar extends JPanel implements ActionListener {
         add(remainingMines);
     }
 
-    // Updates the timer
+    // Shows the whole seconds on the clock
     protected void updateTimer() {
-        String time = timeElapsed.getText().trim();
-        int t = Integer.parseInt(time);
-        if(t >= 1000)
-            timer.stop();
-        else
-        {
-            t++;
-            timeElapsed.setText(t+"");
-        }
+        long seconds = clock == null ? 0 : clock.getMillis() / 1000;
+        timeElapsed.setText(Math.min(seconds, MAX_SHOWN)+"");
     }
 
-    // Starts the Timer
-    protected static void startTimer() {
+    // Starts showing the time on a clock
+    protected void startTimer(GameClock gameClock) {
+        clock = gameClock;
         timer.start();
     }
 
-    // Stops the Timer
-    protected static void stopTimer() {
+    // Stops showing the time, after showing it one last time
+    protected void stopTimer() {
         timer.stop();
+        updateTimer();
     }
 
     // Sets the Timer to Zero
     protected void resetTimerLabel() {
+        clock = null;
         timeElapsed.setText("0");
     }
 
     // Returns True if Timer is on, otherwise false
-    protected static boolean isTimerOn() {
+    protected boolean isTimerOn() {
         if(timer.isRunning())
             return true;
 
@@ -80,12 +83,6 @@ public class StatusBar extends JPanel implements ActionListener {
         return timer;
     }
 
-    // Returns an integer of the Timer
-    protected int getTimerInt() {
-        String time = timeElapsed.getText().trim();
-        return Integer.parseInt(time);
-    }
-
     // Returns the restart button
     protected JButton getRestartButton() {
         return restart;
@@ -0,0 +1,129 @@
+import java.util.SplittableRandom;
+
+/**
+ *  This interface is used by the SimulationRunner to decide where to click
+ *  in a headless game. A Strategy is told about the board when a game
+ *  starts and about every cell opened afterwards, and picks the next cell
+ *  to left click. A Strategy only plays one game at a time, the runner
+ *  makes a new one for every game. A few simple strategies are nested
+ *  inside and can be picked by name with forName().
+ */
+public interface Strategy {
+
+    // Called when a new game starts, random can be used for guesses
+    void start(BoardModel model, SplittableRandom random);
+
+    // Tells the strategy about the first count cells of opened
+    void opened(int[] opened, int count);
+
+    // Returns the next cell to left click, -1 to give up
+    int nextClick();
+
+    // Returns a new Strategy by name: random, logic or probability
+    static Strategy forName(String name) {
+        switch (name) {
+            case "random":
+                return new RandomClicks();
+            case "logic":
+                return new Logic();
+            case "probability":
+                return new Probability();
+            default:
+                throw new IllegalArgumentException("Unknown strategy " + name);
+        }
+    }
+
+    /**
+     *  Clicks a random hidden cell every time.
+     */
+    final class RandomClicks implements Strategy {
+
+        private BoardModel model;
+        private SplittableRandom random;
+
+        public void start(BoardModel model, SplittableRandom random) {
+            this.model = model;
+            this.random = random;
+        }
+
+        public void opened(int[] opened, int count) {
+
+        }
+
+        public int nextClick() {
+            return randomHidden(model, random);
+        }
+    }
+
+    /**
+     *  Clicks cells the Solver proves safe and guesses a random cell that
+     *  is not a known Mine when there is none.
+     */
+    final class Logic implements Strategy {
+
+        private BoardModel model;
+        private SplittableRandom random;
+        private Solver solver;
+
+        public void start(BoardModel model, SplittableRandom random) {
+            this.model = model;
+            this.random = random;
+            solver = new Solver(model);
+        }
+
+        public void opened(int[] opened, int count) {
+            solver.opened(opened, count);
+        }
+
+        public int nextClick() {
+            solver.solve();
+            int cell = solver.nextSafe();
+            if(cell >= 0)
+                return cell;
+            for(int tries = 0; tries < 64; tries++) {
+                cell = randomHidden(model, random);
+                if(cell < 0 || !solver.isKnownMine(cell))
+                    return cell;
+            }
+            return cell;
+        }
+    }
+
+    /**
+     *  Clicks the cell the ProbabilityEngine finds least likely to be a Mine.
+     */
+    final class Probability implements Strategy {
+
+        private ProbabilityEngine engine;
+
+        public void start(BoardModel model, SplittableRandom random) {
+            engine = new ProbabilityEngine(model);
+        }
+
+        public void opened(int[] opened, int count) {
+            engine.opened(opened, count);
+        }
+
+        public int nextClick() {
+            engine.update();
+            return engine.safestCell();
+        }
+    }
+
+    // Returns a random hidden cell, -1 if there is none
+    static int randomHidden(BoardModel model, SplittableRandom random) {
+        int limit = model.getIndexLimit();
+        for(int tries = 0; tries < 64; tries++) {
+            int cell = random.nextInt(limit);
+            if(model.isCell(cell) && model.isHidden(cell))
+                return cell;
+        }
+        int start = random.nextInt(limit);
+        for(int i = 0; i < limit; i++) {
+            int cell = (start + i) % limit;
+            if(model.isCell(cell) && model.isHidden(cell))
+                return cell;
+        }
+        return -1;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,213 @@
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.swing.ImageIcon;
+
+/**
+ *  This class deals with drawing every kind of Tile once and reusing the
+ *  pictures. An atlas holds a picture of each opened Tile (blank, numbers
+ *  1 to 8 and the Mine), the wrongly flagged Tile and the hidden Tiles in
+ *  every shade of the gradient, plain or hovered and with each mark. A
+ *  Board paints by copying these pictures, so painting a Tile allocates
+ *  nothing and hover events do not make garbage. Atlases are shared by
+ *  every Board in the program, one per Tile size, font and screen scale,
+ *  and the icons are loaded only once. Hidden Tiles are drawn the first
+ *  time a shade is asked for, a Board asks for all of it's shades before
+ *  it paints. The pictures are made compatible with the screen so Java2D
+ *  can keep them in video memory. An atlas should only be used from the
+ *  Swing thread.
+ */
+public final class TileAtlas {
+
+    protected static final int SHADES = 101;        // # of shades in the gradient of hidden Tiles
+    private static final int MARKS = 3;             // NO_MARK, FLAG and QUESTION
+    private static final int MAX_ATLASES = 16;      // Atlases kept before the old ones are dropped
+
+    // Colors of the Tiles
+    private static final Color OPEN_PAINT = new Color(0,100,200);
+    private static final Color HIGH_PAINT = new Color(255,150,0);
+    private static final Color WRONG_PAINT = Color.red;
+
+    // Game Icons, shared by every atlas
+    private static final ImageIcon MINE = new ImageIcon("mine.png");
+    private static final ImageIcon FLAG = new ImageIcon("flag.png");
+    private static final ImageIcon QUESTION = new ImageIcon("q.png");
+
+    private static final Map<Key,TileAtlas> ATLASES = new ConcurrentHashMap<Key,TileAtlas>();
+
+    private final Key key;                          // Size, font and scale the Tiles are drawn for
+    private final GraphicsConfiguration screen;     // Screen the pictures are made for, null if headless
+    private final BufferedImage[] open;             // Opened Tiles by symbol, MINE included
+    private final BufferedImage[] hidden;           // Hidden Tiles by shade, mark and hover
+    private final BufferedImage wrongFlag;          // Flag on a Tile that is not a Mine, once the game is over
+
+    // CONSTRUCTOR
+    private TileAtlas(Key key, GraphicsConfiguration screen) {
+        this.key = key;
+        this.screen = screen;
+        open = new BufferedImage[BoardModel.MINE + 1];
+        for(int symbol = 0; symbol < open.length; symbol++)
+            open[symbol] = drawOpen(symbol);
+        hidden = new BufferedImage[SHADES * MARKS * 2];
+        wrongFlag = drawHidden(WRONG_PAINT, BoardModel.FLAG);
+    }
+
+    // Returns the atlas for Tiles of a size in a font on a screen, drawn the
+    // first time it is asked for. The screen may be null when there is none
+    protected static TileAtlas of(int width, int height, Font font, GraphicsConfiguration screen) {
+        Key key = new Key(width, height, font, scaleOf(screen));
+        TileAtlas atlas = ATLASES.get(key);
+        if(atlas != null)
+            return atlas;
+        if(ATLASES.size() >= MAX_ATLASES)               // Only sizes no Board uses anymore pile up
+            ATLASES.clear();
+        return ATLASES.computeIfAbsent(key, k -> new TileAtlas(k, screen));
+    }
+
+    // Returns true if this atlas draws Tiles of a size in a font on a screen
+    protected boolean fits(int width, int height, Font font, GraphicsConfiguration screen) {
+        return key.width == width && key.height == height && Objects.equals(key.font, font)
+                && (screen == this.screen || key.scale == scaleOf(screen));
+    }
+
+    // Returns the opened Tile of a symbol, the Mine for MINE
+    protected Image open(int symbol) {
+        return open[symbol];
+    }
+
+    // Returns the Tile of a wrongly placed Flag
+    protected Image wrongFlag() {
+        return wrongFlag;
+    }
+
+    // Returns a hidden Tile of a shade with a mark, lighter if it is hovered
+    protected Image hidden(int shade, int mark, boolean hover) {
+        int i = ((shade * MARKS) + mark) * 2 + (hover ? 1 : 0);
+        if(hidden[i] == null)
+            hidden[i] = drawHidden(new Color(0, hover ? Math.min(135 - shade, 255) : 100 - shade, 255), mark);
+        return hidden[i];
+    }
+
+    // Draws every hidden Tile of a shade ahead of painting
+    protected void prepare(int shade) {
+        for(int mark = 0; mark < MARKS; mark++) {
+            hidden(shade, mark, false);
+            hidden(shade, mark, true);
+        }
+    }
+
+    // Returns the width of a Tile on the board, the pictures may hold more pixels
+    protected int getWidth() {
+        return key.width;
+    }
+
+    // Returns the height of a Tile on the board, the pictures may hold more pixels
+    protected int getHeight() {
+        return key.height;
+    }
+
+    // Draws an opened Tile and it's Icon or Symbol
+    private BufferedImage drawOpen(int symbol) {
+        BufferedImage image = image();
+        Graphics2D g = graphics(image);
+        int w = key.width, h = key.height;
+        g.setColor(OPEN_PAINT);
+        g.fill3DRect(0, 0, w, h, false);
+        if(symbol == BoardModel.MINE) {
+            drawIcon(g, MINE, w, h);
+        }
+        else if(symbol != 0) {
+            g.setColor(symbol > 2 ? HIGH_PAINT : Color.white);
+            String text = Integer.toString(symbol);
+            FontMetrics metrics = g.getFontMetrics();
+            g.drawString(text, (w - metrics.stringWidth(text)) / 2,
+                    (h - metrics.getHeight()) / 2 + metrics.getAscent());
+        }
+        g.dispose();
+        return image;
+    }
+
+    // Draws a hidden Tile of a color and it's mark
+    private BufferedImage drawHidden(Color color, int mark) {
+        BufferedImage image = image();
+        Graphics2D g = graphics(image);
+        g.setColor(color);
+        g.fill3DRect(0, 0, key.width, key.height, true);
+        if(mark == BoardModel.FLAG)
+            drawIcon(g, FLAG, key.width, key.height);
+        else if(mark == BoardModel.QUESTION)
+            drawIcon(g, QUESTION, key.width, key.height);
+        g.dispose();
+        return image;
+    }
+
+    // Draws an Icon centered in a Tile, scaled down if the Tile is too small
+    private static void drawIcon(Graphics2D g, ImageIcon icon, int w, int h) {
+        int size = Math.min(Math.min(w, h), icon.getIconWidth());
+        if(size > 0)
+            g.drawImage(icon.getImage(), (w - size) / 2, (h - size) / 2, size, size, null);
+    }
+
+    // Returns an empty picture with a pixel for every screen pixel of a Tile
+    private BufferedImage image() {
+        int w = Math.max(1, (int)Math.ceil(key.width * key.scale));
+        int h = Math.max(1, (int)Math.ceil(key.height * key.scale));
+        if(screen == null)
+            return new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        return screen.createCompatibleImage(w, h, Transparency.OPAQUE);
+    }
+
+    // Returns a Graphics that draws a Tile in board units onto a picture,
+    // with the text settings of the desktop
+    private Graphics2D graphics(BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        g.scale(key.scale, key.scale);
+        g.setFont(key.font);
+        Object hints = Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+        if(hints instanceof Map)
+            g.addRenderingHints((Map<?,?>)hints);
+        return g;
+    }
+
+    // Returns how many screen pixels a board unit covers on a screen
+    private static double scaleOf(GraphicsConfiguration screen) {
+        if(screen == null)
+            return 1;
+        AffineTransform transform = screen.getDefaultTransform();
+        return Math.max(1, transform.getScaleX());
+    }
+
+    /**
+     *  What an atlas is drawn for.
+     */
+    private static final class Key {
+
+        private final int width;
+        private final int height;
+        private final Font font;
+        private final double scale;
+
+        // CONSTRUCTOR
+        Key(int width, int height, Font font, double scale) {
+            this.width = width;
+            this.height = height;
+            this.font = font;
+            this.scale = scale;
+        }
+
+        public boolean equals(Object other) {
+            if(!(other instanceof Key))
+                return false;
+            Key key = (Key)other;
+            return width == key.width && height == key.height && scale == key.scale
+                    && Objects.equals(font, key.font);
+        }
+
+        public int hashCode() {
+            return Objects.hash(width, height, font, scale);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,155 @@
+/**
+ *  This class deals with how the cells of a board are laid out in memory
+ *  and which cells are neighbors. The rows x cols cells are stored row by
+ *  row inside a ring of border cells one cell wide, so every cell of the
+ *  board has all of it's neighbors inside the array. Neighbors are then
+ *  found by adding a precomputed offset to a cell index, without checking
+ *  if the cell sits on an edge. A Square topology gives each cell it's 8
+ *  surrounding cells, a Hex topology lays rows out as offset hexagons with
+ *  6 neighbors each.
+ */
+public abstract class Topology {
+
+    private static final int MAX_SIZE = Integer.MAX_VALUE - 8;  // Largest array the VM allocates
+
+    protected final int rows;                       // # of Rows
+    protected final int cols;                       // # of Columns
+    protected final int stride;                     // Distance between two rows in the array
+
+    // CONSTRUCTOR
+    Topology(int rows, int cols) {
+        if(((long)rows + 2)*((long)cols + 2) > MAX_SIZE)
+            throw new IllegalArgumentException("Board " + rows + "x" + cols + " is too large");
+        this.rows = rows;
+        this.cols = cols;
+        stride = cols + 2;
+    }
+
+    // Returns a board where every cell touches the 8 cells around it
+    public static Topology square(int rows, int cols) {
+        return new Square(rows, cols);
+    }
+
+    // Returns a board of hexagons where odd rows are shifted half a cell right
+    public static Topology hex(int rows, int cols) {
+        return new Hex(rows, cols);
+    }
+
+    // Returns the offsets from a cell to all of it's neighbors. They are listed
+    // so that the neighbor at i sees the cell at opposite(i) of it's own offsets
+    protected abstract int[] offsets(int cell);
+
+    // Returns where a neighbor finds the cell that found it at offset i
+    protected int opposite(int i) {
+        return maxNeighbors() - 1 - i;
+    }
+
+    // Returns the most neighbors a cell can have
+    protected abstract int maxNeighbors();
+
+    // Returns true if every cell of the board uses the same offsets
+    protected abstract boolean isUniform();
+
+    // Returns the index of the cell at a row and column
+    protected int index(int row, int col) {
+        return (row + 1)*stride + col + 1;
+    }
+
+    // Returns the row of a cell
+    protected int rowOf(int cell) {
+        return cell / stride - 1;
+    }
+
+    // Returns the column of a cell
+    protected int colOf(int cell) {
+        return cell % stride - 1;
+    }
+
+    // Returns the index of the k-th cell of the board, counted row by row
+    protected int cellAt(int k) {
+        return index(k / cols, k % cols);
+    }
+
+    // Returns the # of entries needed to store the board with it's border
+    protected int size() {
+        return (rows + 2)*stride;
+    }
+
+    // Returns the # of Rows
+    protected int getRows() {
+        return rows;
+    }
+
+    // Returns the # of Columns
+    protected int getCols() {
+        return cols;
+    }
+
+    // Returns the distance between two rows in the array
+    protected int getStride() {
+        return stride;
+    }
+
+    // Returns true if an index lies in the border ring around the board
+    protected boolean isBorder(int cell) {
+        int row = cell / stride;
+        int col = cell % stride;
+        return row == 0 || row == rows + 1 || col == 0 || col == cols + 1;
+    }
+
+    /**
+     *  Square cells where every cell touches the 8 cells around it.
+     */
+    private static final class Square extends Topology {
+
+        private final int[] offsets;
+
+        // CONSTRUCTOR
+        Square(int rows, int cols) {
+            super(rows, cols);
+            offsets = new int[] { -stride-1, -stride, -stride+1, -1, 1, stride-1, stride, stride+1 };
+        }
+
+        protected int[] offsets(int cell) {
+            return offsets;
+        }
+
+        protected int maxNeighbors() {
+            return 8;
+        }
+
+        protected boolean isUniform() {
+            return true;
+        }
+    }
+
+    /**
+     *  Hexagon cells laid out in rows, where odd rows are shifted half a
+     *  cell to the right. The offsets depend on whether the row is even or
+     *  odd, so there is one table for each.
+     */
+    private static final class Hex extends Topology {
+
+        private final int[] evenOffsets;
+        private final int[] oddOffsets;
+
+        // CONSTRUCTOR
+        Hex(int rows, int cols) {
+            super(rows, cols);
+            evenOffsets = new int[] { -stride-1, -stride, -1, 1, stride-1, stride };
+            oddOffsets = new int[] { -stride, -stride+1, -1, 1, stride, stride+1 };
+        }
+
+        protected int[] offsets(int cell) {
+            return (rowOf(cell) & 1) == 0 ? evenOffsets : oddOffsets;
+        }
+
+        protected int maxNeighbors() {
+            return 6;
+        }
+
+        protected boolean isUniform() {
+            return false;
+        }
+    }
+}
\ No newline at end of file